@@ -0,0 +1,22 @@
+/**
+ * Allele frequencies of variant calls of all samples along the reference genome.
+ * 
+ * Positions without a variant call have a frequency of 0.
+ *
+ */
+public interface AlleleFrequencies
+{
+	/**
+	 * @param pos	the 0-based genome position
+	 * @param sample	the sample index
+	 * @return	the allele frequency of the sample at the given position
+	 */
+	public double get(int pos, int sample);
+	
+	/**
+	 * @param pos	the 0-based genome position
+	 * @param sample	the sample index
+	 * @param freq	the allele frequency of the sample at the given position
+	 */
+	public void set(int pos, int sample, double freq);
+}
@@ -0,0 +1,184 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the records of a (decompressed) BCF2 file.
+ * 
+ * The header text is only used for the dictionary of FILTER, INFO and
+ * FORMAT keys and the names of the samples. The records are read into a
+ * reusable {@link BCFRecord}.
+ *
+ */
+public class BCFReader implements VCFRecordReader
+{
+	private static final byte[] MAGIC = {'B', 'C', 'F', 2};
+	
+	private final InputStream in;
+	
+	private final Map<String,Integer> dictionary = new HashMap<String, Integer>();
+	
+	private final List<String> sampleNames = new ArrayList<String>();
+	
+	private final byte[] lengths = new byte[8];
+	
+	private BCFRecord record;
+	
+	/**
+	 * Reads the header of the file.
+	 * 
+	 * @param in	the decompressed BCF data
+	 * @throws IOException
+	 */
+	public BCFReader(InputStream in) throws IOException
+	{
+		this.in = in;
+		
+		byte[] magic = new byte[5];
+		readFully(magic, magic.length);
+		if(!isBCF(magic, magic.length))
+			throw new IOException("Not a BCF2 file");
+		
+		readFully(lengths, 4);
+		byte[] text = new byte[littleEndian32(lengths, 0)];
+		readFully(text, text.length);
+		
+		readHeader(new String(text, StandardCharsets.ISO_8859_1));
+		
+		record = new BCFRecord(dictionary);
+	}
+	
+	/**
+	 * @param header	the first (decompressed) bytes of a file
+	 * @param length	the number of bytes in header
+	 * @return	true if the bytes are the start of a BCF2 file
+	 */
+	public static boolean isBCF(byte[] header, int length)
+	{
+		if(length<MAGIC.length)
+			return false;
+		for(int i=0; i<MAGIC.length; i++)
+		{
+			if(header[i]!=MAGIC[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads the sample names and the dictionary. The dictionary holds PASS
+	 * first and then the IDs of the FILTER, INFO and FORMAT lines in the
+	 * order of the header, unless an explicit index (IDX) is given.
+	 */
+	private void readHeader(String text)
+	{
+		dictionary.put("PASS", 0);
+		int next = 1;
+		
+		String id;
+		int idx;
+		int start;
+		int end;
+		for(String line : text.split("\n"))
+		{
+			if(line.startsWith("#CHROM"))
+			{
+				String[] columns = line.trim().split("\t");
+				if(columns.length>9)
+					sampleNames.addAll(Arrays.asList(columns).subList(9, columns.length));
+			}
+			
+			if(!line.startsWith("##FILTER=<") && !line.startsWith("##INFO=<") && !line.startsWith("##FORMAT=<"))
+				continue;
+			
+			start = line.indexOf("<ID=")+4;
+			end = start;
+			while(end<line.length() && line.charAt(end)!=',' && line.charAt(end)!='>')
+				end++;
+			id = line.substring(start, end);
+			
+			idx = line.lastIndexOf(",IDX=");
+			if(idx>=0)
+			{
+				end = idx+5;
+				while(end<line.length() && Character.isDigit(line.charAt(end)))
+					end++;
+				idx = Integer.parseInt(line.substring(idx+5, end));
+				dictionary.put(id, idx);
+				next = Math.max(next, idx+1);
+			}
+			else if(!dictionary.containsKey(id))
+			{
+				dictionary.put(id, next++);
+			}
+		}
+	}
+	
+	/**
+	 * @return	the names of the samples in the header
+	 */
+	public List<String> getSampleNames()
+	{
+		return sampleNames;
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		int first = in.read();
+		if(first==-1)
+			return false;
+		
+		lengths[0] = (byte)first;
+		readFully(lengths, 1, 7);
+		
+		record.read(in, littleEndian32(lengths, 0), littleEndian32(lengths, 4));
+		return true;
+	}
+	
+	@Override
+	public VCFRecord record()
+	{
+		return record;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+	
+	private void readFully(byte[] b, int length) throws IOException
+	{
+		readFully(b, 0, length);
+	}
+	
+	private void readFully(byte[] b, int off, int length) throws IOException
+	{
+		readFully(in, b, off, length);
+	}
+	
+	static void readFully(InputStream in, byte[] b, int off, int length) throws IOException
+	{
+		int read;
+		while(length>0)
+		{
+			read = in.read(b, off, length);
+			if(read==-1)
+				throw new EOFException("Truncated BCF file");
+			off += read;
+			length -= read;
+		}
+	}
+	
+	private static int littleEndian32(byte[] b, int off)
+	{
+		return (b[off] & 0xFF) | (b[off+1] & 0xFF)<<8 | (b[off+2] & 0xFF)<<16 | (b[off+3] & 0xFF)<<24;
+	}
+}
@@ -0,0 +1,441 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * A record of a BCF2 file.
+ * 
+ * The typed values are decoded directly from the binary record. The values
+ * are interpreted like their text representation in a VCF file, so a BCF
+ * file gives the same results as the VCF file it was converted from.
+ *
+ */
+public class BCFRecord implements VCFRecord
+{
+	private static final int TYPE_INT8 = 1;
+	private static final int TYPE_INT16 = 2;
+	private static final int TYPE_INT32 = 3;
+	private static final int TYPE_FLOAT = 5;
+	private static final int TYPE_CHAR = 7;
+	
+	private static final int MISSING = Integer.MIN_VALUE;
+	private static final int END_OF_VECTOR = Integer.MIN_VALUE+1;
+	
+	private static final int MISSING_FLOAT = 0x7F800001;
+	
+	private static final String[] REFERENCE_BLOCK_ALTS = {"<NON_REF>", "<*>"};
+	
+	private final int endKey;
+	
+	/** the dictionary indices of the FORMAT_KEYS (-1 if not in the header) */
+	private final int[] keyIds = new int[FORMAT_KEYS.length];
+	
+	/** the FORMAT keys the positions were resolved for */
+	private int[] resolvedKeys = new int[0];
+	
+	/** the positions of the FORMAT_KEYS in the FORMAT entries of the record (-1 if missing) */
+	private final int[] formatIndices = new int[FORMAT_KEYS.length];
+	
+	private byte[] data = new byte[1024];
+	
+	private ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	
+	private int pos;
+	private int qualBits;
+	private int numAlleles;
+	private int altStart;
+	private int altLength;
+	private int end;
+	
+	private int numSamples;
+	
+	private int numFormats;
+	private int[] formatKeys = new int[16];
+	private int[] formatTypes = new int[16];
+	private int[] formatCounts = new int[16];
+	private int[] formatOffsets = new int[16];
+	
+	//descriptor of the last typed value read
+	private int type;
+	private int count;
+	
+	/**
+	 * @param dictionary	the dictionary of FILTER, INFO and FORMAT keys of the file
+	 */
+	BCFRecord(Map<String,Integer> dictionary)
+	{
+		this.endKey = dictionary.containsKey("END") ? dictionary.get("END") : -1;
+		
+		for(int key=0; key<FORMAT_KEYS.length; key++)
+			keyIds[key] = dictionary.containsKey(FORMAT_KEYS[key]) ? dictionary.get(FORMAT_KEYS[key]) : -1;
+	}
+	
+	/**
+	 * Reads a record and finds the offsets of the values.
+	 * 
+	 * @param in	the BCF data
+	 * @param sharedLength	the length of the site information
+	 * @param individualLength	the length of the sample information
+	 * @throws IOException
+	 */
+	void read(InputStream in, int sharedLength, int individualLength) throws IOException
+	{
+		int length = sharedLength+individualLength;
+		if(length>data.length)
+		{
+			data = new byte[Math.max(length, data.length*2)];
+			buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		BCFReader.readFully(in, data, 0, length);
+		
+		pos = buffer.getInt(4)+1;
+		qualBits = buffer.getInt(12);
+		numAlleles = buffer.getInt(16)>>>16;
+		int numInfos = buffer.getInt(16) & 0xFFFF;
+		numFormats = (buffer.getInt(20)>>>24) & 0xFF;
+		numSamples = buffer.getInt(20) & 0xFFFFFF;
+		
+		//ID
+		int p = skip(24);
+		
+		//alleles
+		altStart = 0;
+		altLength = 0;
+		for(int i=0; i<numAlleles; i++)
+		{
+			int values = descriptor(p);
+			if(i==1)
+			{
+				altStart = values;
+				altLength = count;
+			}
+			p = values+count*size(type);
+		}
+		
+		//FILTER
+		p = skip(p);
+		
+		//INFO
+		end = MISSING;
+		int key;
+		for(int i=0; i<numInfos; i++)
+		{
+			p = descriptor(p);
+			key = value(p, type);
+			p += size(type);
+			
+			int values = descriptor(p);
+			if(key==endKey && count>0 && type!=TYPE_FLOAT && type!=TYPE_CHAR)
+				end = value(values, type);
+			p = values+count*size(type);
+		}
+		
+		//FORMAT
+		if(numFormats>formatKeys.length)
+		{
+			formatKeys = Arrays.copyOf(formatKeys, numFormats);
+			formatTypes = Arrays.copyOf(formatTypes, numFormats);
+			formatCounts = Arrays.copyOf(formatCounts, numFormats);
+			formatOffsets = Arrays.copyOf(formatOffsets, numFormats);
+		}
+		p = sharedLength;
+		for(int i=0; i<numFormats; i++)
+		{
+			p = descriptor(p);
+			formatKeys[i] = value(p, type);
+			p += size(type);
+			
+			p = descriptor(p);
+			formatTypes[i] = type;
+			formatCounts[i] = count;
+			formatOffsets[i] = p;
+			p += numSamples*count*size(type);
+		}
+		
+		if(!formatEquals())
+			resolveFormat();
+	}
+	
+	private boolean formatEquals()
+	{
+		if(numFormats!=resolvedKeys.length)
+			return false;
+		for(int i=0; i<numFormats; i++)
+		{
+			if(formatKeys[i]!=resolvedKeys[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Keeps the FORMAT keys of the record and finds the positions of the FORMAT_KEYS.
+	 */
+	private void resolveFormat()
+	{
+		resolvedKeys = Arrays.copyOf(formatKeys, numFormats);
+		
+		Arrays.fill(formatIndices, -1);
+		for(int key=0; key<FORMAT_KEYS.length; key++)
+		{
+			for(int i=0; i<numFormats && formatIndices[key]<0; i++)
+			{
+				if(keyIds[key]>=0 && formatKeys[i]==keyIds[key])
+					formatIndices[key] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Reads the descriptor of a typed value into type and count.
+	 * 
+	 * @return	the offset of the first value
+	 */
+	private int descriptor(int p)
+	{
+		int descriptor = data[p] & 0xFF;
+		p++;
+		
+		type = descriptor & 0xF;
+		count = descriptor>>>4;
+		
+		if(count==15)
+		{
+			int lengthType = data[p] & 0xF;
+			count = value(p+1, lengthType);
+			p += 1+size(lengthType);
+		}
+		
+		return p;
+	}
+	
+	/**
+	 * @return	the offset after the typed value at p
+	 */
+	private int skip(int p)
+	{
+		p = descriptor(p);
+		return p+count*size(type);
+	}
+	
+	private static int size(int type)
+	{
+		switch(type)
+		{
+			case TYPE_INT8:
+			case TYPE_CHAR:
+				return 1;
+			case TYPE_INT16:
+				return 2;
+			case TYPE_INT32:
+			case TYPE_FLOAT:
+				return 4;
+			default:
+				return 0;
+		}
+	}
+	
+	/**
+	 * @return	the integer at p, MISSING or END_OF_VECTOR
+	 */
+	private int value(int p, int type)
+	{
+		int value;
+		switch(type)
+		{
+			case TYPE_INT8:
+				value = data[p];
+				if(value==Byte.MIN_VALUE)
+					return MISSING;
+				if(value==Byte.MIN_VALUE+1)
+					return END_OF_VECTOR;
+				return value;
+			case TYPE_INT16:
+				value = buffer.getShort(p);
+				if(value==Short.MIN_VALUE)
+					return MISSING;
+				if(value==Short.MIN_VALUE+1)
+					return END_OF_VECTOR;
+				return value;
+			case TYPE_INT32:
+				return buffer.getInt(p);
+			default:
+				throw new NumberFormatException("Non-integer value in BCF record at position "+pos);
+		}
+	}
+	
+	/**
+	 * @return	the i-th value of a sample of a FORMAT entry
+	 */
+	private int sampleValue(int sample, int format, int i)
+	{
+		if(sample>=numSamples)
+			throw new Error("ERROR: BCF record with less than "+(sample+1)+" samples at position "+pos);
+		
+		if(i>=formatCounts[format])
+			return END_OF_VECTOR;
+		
+		int size = size(formatTypes[format]);
+		return value(formatOffsets[format]+(sample*formatCounts[format]+i)*size, formatTypes[format]);
+	}
+	
+	/**
+	 * @return	the single value of a sample of a FORMAT entry
+	 * 			(like an integer in a VCF file, '.' and lists are no integers)
+	 */
+	private int singleSampleValue(int sample, int format)
+	{
+		int value = sampleValue(sample, format, 0);
+		
+		if(value==MISSING || value==END_OF_VECTOR || (formatCounts[format]>1 && sampleValue(sample, format, 1)!=END_OF_VECTOR))
+			throw new NumberFormatException("No single integer in BCF record at position "+pos);
+		
+		return value;
+	}
+	
+	@Override
+	public int getPos()
+	{
+		return pos;
+	}
+	
+	@Override
+	public int getEnd()
+	{
+		if(end==MISSING || end==END_OF_VECTOR)
+			return pos;
+		return end;
+	}
+	
+	@Override
+	public boolean isReferenceBlock()
+	{
+		if(numAlleles!=2)
+			return false;
+		
+		for(String alt : REFERENCE_BLOCK_ALTS)
+		{
+			if(altLength==alt.length() && matches(altStart, alt))
+				return true;
+		}
+		return false;
+	}
+	
+	private boolean matches(int start, String value)
+	{
+		for(int i=0; i<value.length(); i++)
+		{
+			if(data[start+i]!=value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	@Override
+	public int getSampleInt(int sample, int key, int missing)
+	{
+		int index = formatIndices[key];
+		if(index<0)
+			return missing;
+		
+		int value = sampleValue(sample, index, 0);
+		if(value==MISSING || value==END_OF_VECTOR)
+			return missing;
+		
+		return singleSampleValue(sample, index);
+	}
+	
+	@Override
+	public double getQual()
+	{
+		if(qualBits==MISSING_FLOAT)
+			throw new NumberFormatException("For input string: \".\"");
+		
+		//the value of the shortest decimal representation, as written in a VCF file
+		return Double.parseDouble(Float.toString(Float.intBitsToFloat(qualBits)));
+	}
+	
+	@Override
+	public char getAlt()
+	{
+		if(numAlleles<2)
+			return '.';
+		if(altLength==0)
+			throw new Error("ERROR: Empty ALT allele in BCF record at position "+pos);
+		return (char)(data[altStart] & 0xFF);
+	}
+	
+	@Override
+	public int getGenotype(int sample)
+	{
+		int index = formatIndices[FORMAT_GT];
+		if(index<0 || formatCounts[index]!=2)
+			return GT_OTHER;
+		
+		int first = sampleValue(sample, index, 0);
+		int second = sampleValue(sample, index, 1);
+		
+		if(first==END_OF_VECTOR || second==END_OF_VECTOR || first==MISSING || second==MISSING)
+			return GT_OTHER;
+		
+		//only unphased genotypes (0/1, not 0|1)
+		if((second & 1)!=0)
+			return GT_OTHER;
+		
+		int a = (first>>1)-1;
+		int b = (second>>1)-1;
+		
+		if(a==-1 && b==-1)
+			return GT_NO_CALL;
+		if(a==0 && b==0)
+			return GT_HOM_REF;
+		if(a==0 && b==1)
+			return GT_HET;
+		if(a==1 && b==1)
+			return GT_HOM_VAR;
+		
+		return GT_OTHER;
+	}
+	
+	@Override
+	public int getDepth(int sample)
+	{
+		int index = formatIndices[FORMAT_AD];
+		int value = index>=0 ? sampleValue(sample, index, 0) : MISSING;
+		if(value!=MISSING && value!=END_OF_VECTOR)
+			return value;
+		
+		index = formatIndices[FORMAT_DP];
+		value = index>=0 ? sampleValue(sample, index, 0) : MISSING;
+		if(value==MISSING || value==END_OF_VECTOR)
+			throw new Error("ERROR: Missing depth (AD or DP) in BCF record at position "+pos);
+		
+		return singleSampleValue(sample, index);
+	}
+	
+	@Override
+	public int getAlleleDepth(int sample, int allele)
+	{
+		int index = formatIndices[FORMAT_AD];
+		if(index<0)
+			throw new Error("ERROR: Missing allele depths (AD) in BCF record at position "+pos);
+		
+		int value = sampleValue(sample, index, allele);
+		
+		if(value==END_OF_VECTOR)
+			throw new Error("ERROR: Missing allele depth in BCF record at position "+pos);
+		if(value==MISSING)
+			throw new NumberFormatException("For input string: \".\"");
+		
+		return value;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "BCF record at position "+pos;
+	}
+}
@@ -0,0 +1,267 @@
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a BGZF file (blocked gzip, as written by bgzip and htslib).
+ * 
+ * A BGZF file is a series of independent gzip members of at most 64 KB. The
+ * compressed blocks are read in order and inflated on a thread pool, up to
+ * a fixed number of blocks ahead of the reader. Without a pool the blocks
+ * are inflated on the reading thread.
+ *
+ */
+public class BGZFInputStream extends InputStream
+{
+	private static final int HEADER_SIZE = 18;
+	
+	private static final ThreadLocal<Inflater> INFLATERS = new ThreadLocal<Inflater>()
+	{
+		@Override
+		protected Inflater initialValue()
+		{
+			return new Inflater(true);
+		}
+	};
+	
+	private final DataInputStream in;
+	
+	private final ExecutorService pool;
+	
+	private final int readAhead;
+	
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	
+	private byte[] block = new byte[0];
+	
+	private int blockPos = 0;
+	
+	private boolean eof = false;
+	
+	private final byte[] header = new byte[HEADER_SIZE];
+	
+	/**
+	 * @param in	the compressed data
+	 * @param pool	the threads the blocks are inflated on (or null)
+	 * @param readAhead	the maximal number of blocks inflated ahead of the reader
+	 */
+	public BGZFInputStream(InputStream in, ExecutorService pool, int readAhead)
+	{
+		this.in = new DataInputStream(in);
+		this.pool = pool;
+		this.readAhead = Math.max(1, readAhead);
+	}
+	
+	/**
+	 * @param header	the first bytes of a file
+	 * @param length	the number of bytes in header
+	 * @return	true if the bytes are the header of a BGZF block
+	 */
+	public static boolean isBGZF(byte[] header, int length)
+	{
+		return length>=HEADER_SIZE
+				&& (header[0] & 0xFF)==0x1f && (header[1] & 0xFF)==0x8b
+				&& header[2]==8 && (header[3] & 4)!=0
+				&& header[12]=='B' && header[13]=='C';
+	}
+	
+	@Override
+	public int read() throws IOException
+	{
+		if(!nextBlock())
+			return -1;
+		return block[blockPos++] & 0xFF;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if(len==0)
+			return 0;
+		if(!nextBlock())
+			return -1;
+		
+		int n = Math.min(len, block.length-blockPos);
+		System.arraycopy(block, blockPos, b, off, n);
+		blockPos += n;
+		return n;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		for(Future<byte[]> future : pending)
+			future.cancel(false);
+		pending.clear();
+		in.close();
+	}
+	
+	/**
+	 * Makes sure the current block has unread bytes.
+	 * 
+	 * @return	false if the end of the file is reached
+	 */
+	private boolean nextBlock() throws IOException
+	{
+		while(blockPos==block.length)
+		{
+			fillPending();
+			
+			if(pending.isEmpty())
+				return false;
+			
+			try
+			{
+				block = pending.poll().get();
+			}
+			catch(ExecutionException e)
+			{
+				if(e.getCause() instanceof IOException)
+					throw (IOException)e.getCause();
+				throw new IOException(e.getCause());
+			}
+			catch(InterruptedException e)
+			{
+				throw new IOException(e);
+			}
+			blockPos = 0;
+			
+			fillPending();
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads compressed blocks and hands them to the pool until enough
+	 * blocks are pending.
+	 */
+	private void fillPending() throws IOException
+	{
+		Callable<byte[]> task;
+		FutureTask<byte[]> future;
+		while(!eof && pending.size()<readAhead)
+		{
+			task = readBlock();
+			
+			if(task==null)
+			{
+				eof = true;
+			}
+			else if(pool!=null)
+			{
+				pending.add(pool.submit(task));
+			}
+			else
+			{
+				future = new FutureTask<byte[]>(task);
+				future.run();
+				pending.add(future);
+			}
+		}
+	}
+	
+	/**
+	 * Reads the next compressed block.
+	 * 
+	 * @return	a task inflating the block or null at the end of the file
+	 */
+	private Callable<byte[]> readBlock() throws IOException
+	{
+		int first = in.read();
+		if(first==-1)
+			return null;
+		
+		header[0] = (byte)first;
+		in.readFully(header, 1, 11);
+		
+		if((header[0] & 0xFF)!=0x1f || (header[1] & 0xFF)!=0x8b || header[2]!=8 || (header[3] & 4)==0)
+			throw new ZipException("Invalid BGZF block header");
+		
+		int xlen = littleEndian16(header, 10);
+		byte[] extra = new byte[xlen];
+		in.readFully(extra);
+		
+		//find the BC subfield holding the block size
+		int blockSize = -1;
+		for(int i=0; i+4<=xlen; i+=4+littleEndian16(extra, i+2))
+		{
+			if(extra[i]=='B' && extra[i+1]=='C' && littleEndian16(extra, i+2)==2)
+				blockSize = littleEndian16(extra, i+4)+1;
+		}
+		if(blockSize<0)
+			throw new ZipException("BGZF block without block size");
+		
+		final byte[] compressed = new byte[blockSize-xlen-20];
+		in.readFully(compressed);
+		
+		byte[] trailer = new byte[8];
+		in.readFully(trailer);
+		
+		final long crc = littleEndian32(trailer, 0);
+		final int size = (int)littleEndian32(trailer, 4);
+		
+		return new Callable<byte[]>()
+		{
+			@Override
+			public byte[] call() throws Exception
+			{
+				return inflate(compressed, size, crc);
+			}
+		};
+	}
+	
+	private static byte[] inflate(byte[] compressed, int size, long crc) throws IOException
+	{
+		byte[] data = new byte[size];
+		
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(compressed);
+		
+		try
+		{
+			int n = 0;
+			while(n<size && !inflater.finished())
+			{
+				int inflated = inflater.inflate(data, n, size-n);
+				if(inflated==0 && (inflater.needsInput() || inflater.needsDictionary()))
+					break;
+				n += inflated;
+			}
+			if(n!=size)
+				throw new EOFException("Truncated BGZF block");
+		}
+		catch(DataFormatException e)
+		{
+			throw new ZipException("Corrupt BGZF block: "+e.getMessage());
+		}
+		
+		CRC32 checksum = new CRC32();
+		checksum.update(data, 0, size);
+		if(checksum.getValue()!=crc)
+			throw new ZipException("BGZF block with wrong checksum");
+		
+		return data;
+	}
+	
+	private static int littleEndian16(byte[] b, int off)
+	{
+		return (b[off] & 0xFF) | (b[off+1] & 0xFF)<<8;
+	}
+	
+	private static long littleEndian32(byte[] b, int off)
+	{
+		return littleEndian16(b, off) | (long)littleEndian16(b, off+2)<<16;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * A genotype matrix that keeps no base calls.
+ *
+ * Every cell holds the reference base of its position, whatever is set.
+ * Used when the VCF files are parsed only for the SNP positions (the first
+ * pass in two-pass mode).
+ *
+ */
+public class DiscardingGenotypeMatrix implements GenotypeMatrix
+{
+	private final ReferenceGenome reference;
+
+	private final int numSamples;
+
+	/**
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples (columns)
+	 */
+	public DiscardingGenotypeMatrix(ReferenceGenome reference, int numSamples)
+	{
+		this.reference = reference;
+		this.numSamples = numSamples;
+	}
+
+	@Override
+	public char get(int pos, int sample)
+	{
+		return reference.charAt(pos);
+	}
+
+	@Override
+	public void set(int pos, int sample, char call)
+	{
+		//dropped
+	}
+
+	@Override
+	public void getRow(int sample, int start, int end, byte[] dest)
+	{
+		reference.copy(start, end, dest, 0);
+	}
+
+	@Override
+	public int length()
+	{
+		return reference.length();
+	}
+
+	@Override
+	public int numSamples()
+	{
+		return numSamples;
+	}
+}
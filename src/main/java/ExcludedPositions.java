@@ -0,0 +1,201 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Positions excluded from the analysis.
+ *
+ * Up to two files can be given (comma separated):
+ * 1st: regions to exclude (gff; e.g. repeat regions, certain genes, etc)
+ * 2nd: annotation whose CDS are used to exclude 1st and 2nd codon positions (gff)
+ *
+ * The regions are merged into a sorted interval index and the codon
+ * positions into a bit mask. Both files are read only once.
+ *
+ */
+public class ExcludedPositions
+{
+	private int[] regionStarts = new int[0];
+
+	private int[] regionEnds = new int[0];
+
+	private PositionSet codonPositions;
+
+	/**
+	 * @param posToExcludeFiles	comma separated list of up to two gff files
+	 * @param genomeLength	length of the reference genome
+	 * @throws Exception
+	 */
+	public ExcludedPositions(String posToExcludeFiles, int genomeLength) throws Exception
+	{
+		String[] filenames = posToExcludeFiles.split(",");
+
+		File excludefile = new File(filenames[0]);
+
+		if(excludefile.exists())
+			readRegions(excludefile);
+		else
+			System.err.println("No positions to exclude provided! All positions will be used!");
+
+		if(filenames.length>1 && new File(filenames[1]).exists())
+			readCodonPositions(new File(filenames[1]).getAbsolutePath(), genomeLength);
+	}
+
+	/**
+	 * @param pos	1-based genome position
+	 * @return	true if the position lies in one of the excluded regions
+	 */
+	public boolean isInExcludedRegion(int pos)
+	{
+		int index = Arrays.binarySearch(regionStarts, pos);
+
+		if(index>=0)
+			return true;
+
+		//last region starting before pos
+		index = -(index+1)-1;
+
+		return index>=0 && regionEnds[index]>=pos;
+	}
+
+	/**
+	 * @param pos	1-based genome position
+	 * @return	true if the position is a 1st or 2nd codon position of a CDS
+	 */
+	public boolean isExcludedCodonPosition(int pos)
+	{
+		return codonPositions!=null && codonPositions.contains(pos);
+	}
+
+	/**
+	 * @param pos	1-based genome position
+	 * @return	true if the position lies in an excluded region or is an excluded codon position
+	 */
+	public boolean isExcluded(int pos)
+	{
+		return isInExcludedRegion(pos) || isExcludedCodonPosition(pos);
+	}
+
+	/**
+	 * Removes all excluded positions from the given set.
+	 *
+	 * @param positions	set of 1-based genome positions
+	 * @return	the number of removed positions
+	 */
+	public int removeFrom(PositionSet positions)
+	{
+		int count = 0;
+
+		for(int pos : positions.toArray())
+		{
+			if(isExcluded(pos))
+			{
+				positions.remove(pos);
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	private void readRegions(File excludefile) throws Exception
+	{
+		int[] starts = new int[64];
+		int[] ends = new int[64];
+		int n = 0;
+
+		String[] cells;
+
+		BufferedReader br = new BufferedReader(new FileReader(excludefile));
+		for(String line=br.readLine(); line!=null;line=br.readLine())
+		{
+			line = line.trim();
+			if(line.length()==0)
+				continue;
+			if(line.startsWith("#"))
+				continue;
+
+			cells = line.split("[\\t]");
+
+			if(n==starts.length)
+			{
+				starts = Arrays.copyOf(starts, n*2);
+				ends = Arrays.copyOf(ends, n*2);
+			}
+
+			// start = 3
+			starts[n] = Integer.parseInt(cells[3]);
+
+			// end = 4
+			ends[n] = Integer.parseInt(cells[4]);
+
+			n++;
+		}
+		br.close();
+
+		mergeRegions(starts, ends, n);
+	}
+
+	/**
+	 * Sorts the regions by start and merges overlapping and adjacent ones.
+	 */
+	private void mergeRegions(int[] starts, int[] ends, int n)
+	{
+		long[] regions = new long[n];
+		for(int i=0; i<n; i++)
+			regions[i] = ((long)starts[i]<<32) | (ends[i] & 0xFFFFFFFFL);
+		Arrays.sort(regions);
+
+		regionStarts = new int[n];
+		regionEnds = new int[n];
+		int merged = 0;
+
+		int start;
+		int end;
+		for(long region : regions)
+		{
+			start = (int)(region>>>32);
+			end = (int)region;
+
+			if(end<start)
+				continue;
+
+			if(merged>0 && start<=regionEnds[merged-1]+1)
+			{
+				regionEnds[merged-1] = Math.max(regionEnds[merged-1], end);
+			}
+			else
+			{
+				regionStarts[merged] = start;
+				regionEnds[merged] = end;
+				merged++;
+			}
+		}
+
+		regionStarts = Arrays.copyOf(regionStarts, merged);
+		regionEnds = Arrays.copyOf(regionEnds, merged);
+	}
+
+	private void readCodonPositions(String cdsFile, int genomeLength) throws Exception
+	{
+		codonPositions = new PositionSet(genomeLength+1);
+
+		List<Gene> cdss = GFFAnnotation.load(cdsFile).getCDSs();
+
+		for(Gene g : cdss)
+		{
+			if(g.strand=='+')
+			{
+				for(int posGenome=g.start; posGenome<=g.end; posGenome+=3)
+					codonPositions.addRange(posGenome, Math.min(posGenome+1, g.end));
+			}
+			else if(g.strand=='-')
+			{
+				for(int posGenome=g.end; posGenome>=g.start; posGenome-=3)
+					codonPositions.addRange(Math.max(posGenome-1, g.start), posGenome);
+			}
+		}
+	}
+}
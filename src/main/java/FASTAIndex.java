@@ -0,0 +1,308 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A samtools-style index (.fai) of a FASTA file.
+ *
+ * Each entry holds the name, the length, the file offset of the first base,
+ * the number of bases per line and the number of bytes per line (including
+ * the line break) of one sequence. With this information any part of a
+ * sequence can be read directly from the (memory-mapped) FASTA file.
+ *
+ */
+public class FASTAIndex
+{
+	public static class Entry
+	{
+		public String name;
+		public int length;
+		public long offset;
+		public int lineBases;
+		public int lineWidth;
+
+		/**
+		 * @param pos	0-based position in the sequence
+		 * @return	the offset of the base in the FASTA file
+		 */
+		public long fileOffset(int pos)
+		{
+			if(lineBases==0)
+				return offset;
+			return offset+(long)(pos/lineBases)*lineWidth+pos%lineBases;
+		}
+	}
+
+	private static final int MAX_MAPPING = 1<<30;
+
+	private final String fastaFile;
+
+	private final List<Entry> entries;
+
+	private FASTAIndex(String fastaFile, List<Entry> entries)
+	{
+		this.fastaFile = fastaFile;
+		this.entries = entries;
+	}
+
+	public List<Entry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Reads the index of a FASTA file (filename.fai). If the index does not
+	 * exist or is older than the FASTA file it is built and, if possible,
+	 * written next to the FASTA file.
+	 *
+	 * @param fastaFile	the name of the FASTA file
+	 * @return	the index or null if the FASTA file cannot be indexed
+	 * 			(lines of different length within a sequence)
+	 * @throws Exception
+	 */
+	public static FASTAIndex load(String fastaFile) throws Exception
+	{
+		File fai = new File(fastaFile+".fai");
+
+		if(fai.exists() && fai.lastModified()>=new File(fastaFile).lastModified())
+			return read(fastaFile, fai);
+
+		FASTAIndex index = build(fastaFile);
+
+		if(index!=null)
+		{
+			try
+			{
+				index.write(fai);
+			}
+			catch(Exception e)
+			{
+				System.err.println("Could not write FASTA index "+fai+" ("+e.getMessage()+"). The index is only kept in memory.");
+			}
+		}
+
+		return index;
+	}
+
+	private static FASTAIndex read(String fastaFile, File fai) throws Exception
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+
+		BufferedReader br = new BufferedReader(new FileReader(fai));
+		String[] cells;
+		Entry entry;
+		for(String line=br.readLine(); line!=null; line=br.readLine())
+		{
+			if(line.length()==0)
+				continue;
+
+			cells = line.split("\t");
+
+			entry = new Entry();
+			entry.name = cells[0];
+			entry.length = Integer.parseInt(cells[1]);
+			entry.offset = Long.parseLong(cells[2]);
+			entry.lineBases = Integer.parseInt(cells[3]);
+			entry.lineWidth = Integer.parseInt(cells[4]);
+			entries.add(entry);
+		}
+		br.close();
+
+		return new FASTAIndex(fastaFile, entries);
+	}
+
+	private void write(File fai) throws Exception
+	{
+		BufferedWriter bw = new BufferedWriter(new FileWriter(fai));
+		for(Entry entry : entries)
+		{
+			bw.write(entry.name+"\t"+entry.length+"\t"+entry.offset+"\t"+entry.lineBases+"\t"+entry.lineWidth);
+			bw.newLine();
+		}
+		bw.close();
+	}
+
+	/**
+	 * Scans a FASTA file once and creates its index.
+	 *
+	 * @return	the index or null if the lines of a sequence differ in length
+	 */
+	private static FASTAIndex build(String fastaFile) throws Exception
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+
+		InputStream in = new FileInputStream(fastaFile);
+		byte[] buffer = new byte[1<<16];
+		int read;
+
+		long offset = 0;
+		long lineStart = 0;
+		int lineBases = 0;
+		boolean inHeader = false;
+		boolean lastLine = false;
+		StringBuilder header = null;
+		Entry entry = null;
+		int b;
+
+		while((read=in.read(buffer))!=-1)
+		{
+			for(int j=0; j<read; j++, offset++)
+			{
+				b = buffer[j];
+
+				if(b=='\n')
+				{
+					if(inHeader)
+					{
+						entry = new Entry();
+						entry.name = header.toString().trim().split("\\s+")[0];
+						entry.offset = offset+1;
+						entries.add(entry);
+						inHeader = false;
+						lastLine = false;
+					}
+					else if(entry!=null)
+					{
+						if(lineBases==0)
+						{
+							//empty line, only allowed at the end of a sequence
+							lastLine = true;
+						}
+						else
+						{
+							if(lastLine || !addLine(entry, lineBases, (int)(offset-lineStart+1)))
+							{
+								in.close();
+								return null;
+							}
+							lastLine = lineBases<entry.lineBases;
+						}
+					}
+
+					lineStart = offset+1;
+					lineBases = 0;
+				}
+				else if(offset==lineStart && b=='>')
+				{
+					header = new StringBuilder();
+					inHeader = true;
+				}
+				else if(inHeader)
+				{
+					header.append((char)(b & 0xFF));
+				}
+				else if(b!='\r')
+				{
+					lineBases++;
+				}
+			}
+		}
+		in.close();
+
+		//last line without line break
+		if(!inHeader && entry!=null && lineBases>0)
+		{
+			if(lastLine || !addLine(entry, lineBases, lineBases))
+				return null;
+		}
+
+		return new FASTAIndex(fastaFile, entries);
+	}
+
+	private static boolean addLine(Entry entry, int lineBases, int lineWidth)
+	{
+		if(entry.lineBases==0)
+		{
+			entry.lineBases = lineBases;
+			entry.lineWidth = lineWidth;
+		}
+		else if(lineBases>entry.lineBases || (lineBases==entry.lineBases && lineWidth!=entry.lineWidth))
+		{
+			return false;
+		}
+
+		entry.length += lineBases;
+		return true;
+	}
+
+	/**
+	 * Reads (a part of) a sequence from the memory-mapped FASTA file.
+	 *
+	 * @param entry	the index entry of the sequence
+	 * @param start	0-based start position (inclusive)
+	 * @param end	0-based end position (exclusive)
+	 * @return	the bases from start to end as they are in the file
+	 * @throws Exception
+	 */
+	public byte[] getSequence(Entry entry, int start, int end) throws Exception
+	{
+		byte[] res = new byte[end-start];
+
+		if(res.length==0)
+			return res;
+
+		RandomAccessFile raf = new RandomAccessFile(fastaFile, "r");
+		FileChannel channel = raf.getChannel();
+
+		//map whole lines, at most about 1 GB at a time
+		int linesPerMapping = Math.max(1, MAX_MAPPING/entry.lineWidth);
+		int basesPerMapping = linesPerMapping*entry.lineBases;
+
+		MappedByteBuffer mapped;
+		long mappingOffset;
+		int mappingEnd;
+		int pos = start;
+		int n;
+		while(pos<end)
+		{
+			mappingEnd = (int)Math.min(end, ((long)pos/basesPerMapping+1)*basesPerMapping);
+			mappingOffset = entry.fileOffset(pos);
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, mappingOffset, entry.fileOffset(mappingEnd-1)+1-mappingOffset);
+
+			//copy line by line
+			while(pos<mappingEnd)
+			{
+				n = Math.min(entry.lineBases-pos%entry.lineBases, mappingEnd-pos);
+				mapped.position((int)(entry.fileOffset(pos)-mappingOffset));
+				mapped.get(res, pos-start, n);
+				pos += n;
+			}
+		}
+
+		raf.close();
+
+		return res;
+	}
+
+	/**
+	 * @param entry	the index entry of a sequence
+	 * @return	the complete header line of the sequence (without '&gt;')
+	 * @throws Exception
+	 */
+	public String getHeader(Entry entry) throws Exception
+	{
+		RandomAccessFile raf = new RandomAccessFile(fastaFile, "r");
+
+		//the header line ends right before the first base
+		long end = entry.offset-1;
+		byte[] bytes = new byte[(int)Math.min(end, 1<<16)];
+		raf.seek(end-bytes.length);
+		raf.readFully(bytes);
+		raf.close();
+
+		int start = bytes.length;
+		while(start>0 && bytes[start-1]!='\n')
+			start--;
+
+		return new String(bytes, start, bytes.length-start, "ISO-8859-1").substring(1).trim();
+	}
+}
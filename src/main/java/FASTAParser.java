@@ -1,9 +1,10 @@
 
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Reads a multiple FASTA file containing DNA sequences in FASTA format
@@ -15,53 +16,126 @@ import java.util.Map;
 public class FASTAParser 
 {
 	/**
-	 * Reads a multiple FASTA file containing DNA sequences in FASTA format.
-	 * @param br	the BufferedReader which reads from the multiple FASTA file
-	 * @return	a list containing the resulting FASTAEntry objects
+	 * Reads a reference genome from a (multiple) FASTA file.
+	 * The names and lengths of all entries are kept, but only the sequence
+	 * of the first entry. The sequence keeps the case of the file, e.g.
+	 * soft-masked bases stay lower-case.
+	 * 
+	 * The FASTA index (filename.fai) is used (and created if missing), so
+	 * only the first sequence is read from the memory-mapped file. Files
+	 * that cannot be indexed are read completely.
+	 * 
+	 * @param filename	the name of the FASTA file
+	 * @return	the reference genome
 	 * @throws Exception
 	 */
-	public static Map<String,String> parseDNA(String filename) throws Exception
+	public static ReferenceGenome parseReference(String filename) throws Exception
 	{
-		BufferedReader br = new BufferedReader(new FileReader(filename));
+		FASTAIndex index = FASTAIndex.load(filename);
 		
-		Map<String,String> fastaEntries = new HashMap<String, String>();
-		
-		String tmpID;
-		StringBuffer tmpSeqString = new StringBuffer();
-		String tmpLine = br.readLine();
+		if(index==null || index.getEntries().isEmpty())
+		{
+			System.err.println("The reference FASTA file cannot be indexed (lines of different length). It is read completely.");
+			return readReference(filename);
+		}
 		
-		//jump to first header line
-		while(tmpLine!=null&&(tmpLine.charAt(0)!='>' || tmpLine.length()==0))
+		List<FASTAIndex.Entry> entries = index.getEntries();
+		String[] contigNames = new String[entries.size()];
+		int[] contigLengths = new int[entries.size()];
+		for(int i=0; i<contigNames.length; i++)
 		{
-			tmpLine=br.readLine();
+			contigNames[i] = entries.get(i).name;
+			contigLengths[i] = entries.get(i).length;
 		}
-		tmpID=tmpLine;
 		
-		tmpLine=br.readLine();
-		while(tmpLine!=null)
+		FASTAIndex.Entry first = entries.get(0);
+		byte[] sequence = index.getSequence(first, 0, first.length);
+		
+		return new ReferenceGenome(index.getHeader(first), contigNames, contigLengths, sequence);
+	}
+	
+	/**
+	 * Reads a reference genome from a (multiple) FASTA file in one pass.
+	 */
+	private static ReferenceGenome readReference(String filename) throws Exception
+	{
+		InputStream in = new FileInputStream(filename);
+		byte[] buffer = new byte[1<<16];
+		int read;
+		
+		List<String> headers = new LinkedList<String>();
+		List<Integer> lengths = new LinkedList<Integer>();
+		
+		byte[] sequence = new byte[1<<16];
+		int length = 0;
+		
+		StringBuilder header = null;
+		boolean lineStart = true;
+		boolean inHeader = false;
+		int b;
+		
+		while((read=in.read(buffer))!=-1)
 		{
-			if(tmpLine.length()!=0)
+			for(int j=0; j<read; j++)
 			{
-				if(tmpLine.charAt(0)=='>')
+				b = buffer[j] & 0xFF;
+			
+				if(b=='\n')
+				{
+					if(inHeader)
+					{
+						headers.add(toID(header.toString().trim()));
+						inHeader = false;
+					}
+					lineStart = true;
+					continue;
+				}
+			
+				if(lineStart && b=='>')
 				{
-					fastaEntries.put(toID(tmpID), tmpSeqString.toString());
-					
-					tmpSeqString = new StringBuffer();
-					
-					tmpID = tmpLine;
+					if(!headers.isEmpty())
+						lengths.add(length);
+					length = 0;
+					header = new StringBuilder(">");
+					inHeader = true;
 				}
-				else
+				else if(inHeader)
 				{
-					tmpSeqString.append(tmpLine);
+					header.append((char)b);
 				}
+				else if(b>' ' && header!=null)
+				{
+					if(headers.size()==1)
+					{
+						if(length==sequence.length)
+							sequence = Arrays.copyOf(sequence, (int)Math.min(Integer.MAX_VALUE-8, 2L*length));
+						sequence[length] = (byte)b;
+					}
+					length++;
+				}
+				lineStart = false;
 			}
-			tmpLine = br.readLine();
 		}
-		fastaEntries.put(toID(tmpID), tmpSeqString.toString());
+		in.close();
+		
+		if(inHeader)
+			headers.add(toID(header.toString().trim()));
+		
+		if(headers.isEmpty())
+			throw new Exception("No FASTA entry found in "+filename);
+		
+		lengths.add(length);
 		
-		br.close();
+		String[] contigNames = new String[headers.size()];
+		int[] contigLengths = new int[contigNames.length];
+		int i = 0;
+		for(String h : headers)
+			contigNames[i++] = h.split("\\s+")[0];
+		i = 0;
+		for(int l : lengths)
+			contigLengths[i++] = l;
 		
-		return fastaEntries;
+		return new ReferenceGenome(headers.get(0), contigNames, contigLengths, Arrays.copyOf(sequence, contigLengths[0]));
 	}
 	
 	private static String toID(String fastaID)
@@ -1,48 +1,211 @@
 
-import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 /**
  * Writes a list of sequences to a file in FASTA format.
  * 
+ * The sequences are written with 60 bases per line. Complete lines are
+ * copied at once into an output buffer that is only written when it is
+ * full (or when the writer is closed), not after every sequence. Bases
+ * are written as single bytes (ASCII).
+ * 
  * @author Alexander Herbig
  *
  */
-public class FASTAWriter 
+public class FASTAWriter implements Closeable
 {
+	private static final int LINE_LENGTH = 60;
+	
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+	
+	private static final int BUFFER_SIZE = 1<<16;
+	
+	/**
+	 * The bases of a sequence that is not held in an array or string.
+	 */
+	public interface Sequence
+	{
+		/**
+		 * @param index	the 0-based index in the sequence
+		 * @return	the base at the index
+		 */
+		public byte byteAt(int index);
+	}
+	
+	private final OutputStream out;
+	
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	
+	private int size = 0;
+	
+	/**
+	 * @param file	the FASTA file
+	 * @throws IOException
+	 */
+	public FASTAWriter(String file) throws IOException
+	{
+		this(new FileOutputStream(file));
+	}
+	
+	/**
+	 * @param out	the stream the FASTA file is written to (closed by {@link #close()})
+	 */
+	public FASTAWriter(OutputStream out)
+	{
+		this.out = out;
+	}
+	
+	/**
+	 * Writes a sequence from a slice of an array.
+	 * 
+	 * @param genomeID	the header of the sequence (without '&gt;')
+	 * @param sequence	the bases
+	 * @param off	the index of the first base
+	 * @param len	the number of bases
+	 * @throws IOException
+	 */
+	public void write(String genomeID, byte[] sequence, int off, int len) throws IOException
+	{
+		writeHeader(genomeID);
+		
+		int lineLength;
+		for(int i=0; i<len; i+=lineLength)
+		{
+			lineLength = Math.min(LINE_LENGTH, len-i);
+			ensure(lineLength+LINE_SEPARATOR.length);
+			System.arraycopy(sequence, off+i, buffer, size, lineLength);
+			size += lineLength;
+			newLine();
+		}
+	}
+	
 	/**
-	 * Writes a list of sequences to a file in FASTA format.
+	 * Writes a sequence from the remaining bytes of a buffer. The position
+	 * of the buffer is not changed.
 	 * 
-	 * @param bw	the BufferedWriter writing the FASTA file
-	 * @param fastaEntries	list of FASTAEntry objects holding the sequences 
-	 * 						which are written to the FASTA file
-	 * @throws Exception
-	 */
-	public static void write(BufferedWriter bw, String genomeID, String sequence) throws Exception
-	{	
-		int charsInLine;
-		String tmpSeqString;
+	 * @param genomeID	the header of the sequence (without '&gt;')
+	 * @param sequence	the bases
+	 * @throws IOException
+	 */
+	public void write(String genomeID, ByteBuffer sequence) throws IOException
+	{
+		if(sequence.hasArray())
+		{
+			write(genomeID, sequence.array(), sequence.arrayOffset()+sequence.position(), sequence.remaining());
+			return;
+		}
 		
-		tmpSeqString=sequence;
-		bw.write(">"+genomeID);
-		bw.newLine();
+		ByteBuffer slice = sequence.slice();
+		writeHeader(genomeID);
 		
-		charsInLine=0;
-		for(int i=0; i<tmpSeqString.length();i++)
+		int lineLength;
+		while(slice.hasRemaining())
+		{
+			lineLength = Math.min(LINE_LENGTH, slice.remaining());
+			ensure(lineLength+LINE_SEPARATOR.length);
+			slice.get(buffer, size, lineLength);
+			size += lineLength;
+			newLine();
+		}
+	}
+	
+	/**
+	 * Writes a sequence from a slice of characters.
+	 * 
+	 * @param genomeID	the header of the sequence (without '&gt;')
+	 * @param sequence	the bases
+	 * @param start	the index of the first base
+	 * @param end	the index after the last base
+	 * @throws IOException
+	 */
+	public void write(String genomeID, final CharSequence sequence, final int start, int end) throws IOException
+	{
+		write(genomeID, end-start, new Sequence()
 		{
-			bw.write(tmpSeqString.charAt(i));
-			charsInLine++;
-			
-			if(charsInLine==60)
+			@Override
+			public byte byteAt(int index)
 			{
-				bw.newLine();
-				charsInLine=0;
+				return (byte)sequence.charAt(start+index);
 			}
+		});
+	}
+	
+	/**
+	 * Writes a sequence whose bases are given one by one.
+	 * 
+	 * @param genomeID	the header of the sequence (without '&gt;')
+	 * @param length	the number of bases
+	 * @param sequence	the bases
+	 * @throws IOException
+	 */
+	public void write(String genomeID, int length, Sequence sequence) throws IOException
+	{
+		writeHeader(genomeID);
+		
+		int lineLength;
+		for(int i=0; i<length; i+=lineLength)
+		{
+			lineLength = Math.min(LINE_LENGTH, length-i);
+			ensure(lineLength+LINE_SEPARATOR.length);
+			for(int j=i; j<i+lineLength; j++)
+				buffer[size++] = sequence.byteAt(j);
+			newLine();
+		}
+	}
+	
+	private void writeHeader(String genomeID) throws IOException
+	{
+		byte[] header = (">"+genomeID).getBytes(Charset.defaultCharset());
+		
+		if(header.length+LINE_SEPARATOR.length>buffer.length)
+		{
+			flushBuffer();
+			out.write(header);
 		}
-		if(charsInLine!=0)
+		else
 		{
-			bw.newLine();
+			ensure(header.length+LINE_SEPARATOR.length);
+			System.arraycopy(header, 0, buffer, size, header.length);
+			size += header.length;
 		}
 		
-		bw.flush();
+		ensure(LINE_SEPARATOR.length);
+		newLine();
+	}
+	
+	private void newLine()
+	{
+		System.arraycopy(LINE_SEPARATOR, 0, buffer, size, LINE_SEPARATOR.length);
+		size += LINE_SEPARATOR.length;
+	}
+	
+	/**
+	 * Makes room for the given number of bytes in the buffer.
+	 */
+	private void ensure(int length) throws IOException
+	{
+		if(size+length>buffer.length)
+			flushBuffer();
+	}
+	
+	private void flushBuffer() throws IOException
+	{
+		out.write(buffer, 0, size);
+		size = 0;
+	}
+	
+	/**
+	 * Writes the buffered bytes and closes the stream.
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		flushBuffer();
+		out.close();
 	}
 }
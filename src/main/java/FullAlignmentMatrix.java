@@ -0,0 +1,139 @@
+import java.io.IOException;
+
+/**
+ * A genotype matrix that writes the full alignment while the calls are
+ * set, without holding the calls of all positions.
+ * 
+ * The calls of a sample are set in ascending order of their positions
+ * (see {@link VCFSampleParser}), so only one block of positions is held per
+ * sample. A block is written when a call behind the block is set. All
+ * calls are also passed on to another matrix, e.g. the {@link SNPStore}
+ * keeping the calls at the SNP positions.
+ *
+ */
+public class FullAlignmentMatrix implements GenotypeMatrix
+{
+	private static final int BLOCK_SIZE = 1<<16;
+	
+	private final ReferenceGenome reference;
+	
+	private final GenotypeMatrix calls;
+	
+	private final FullAlignmentWriter alignment;
+	
+	private final byte[][] blocks;
+	
+	private final int[] blockStarts;
+	
+	/**
+	 * Writes the reference (the first row of the alignment).
+	 * 
+	 * @param reference	the reference genome
+	 * @param calls	the matrix all calls are passed on to
+	 * @param alignment	the full alignment (reference first, then all samples)
+	 * @throws IOException
+	 */
+	public FullAlignmentMatrix(ReferenceGenome reference, GenotypeMatrix calls, FullAlignmentWriter alignment) throws IOException
+	{
+		this.reference = reference;
+		this.calls = calls;
+		this.alignment = alignment;
+		this.blocks = new byte[calls.numSamples()][BLOCK_SIZE];
+		this.blockStarts = new int[calls.numSamples()];
+		
+		alignment.writeReference(0, reference);
+		
+		for(int sample=0; sample<blocks.length; sample++)
+			fill(sample);
+	}
+	
+	@Override
+	public char get(int pos, int sample)
+	{
+		if(pos<blockStarts[sample])
+			throw new Error("ERROR: Position "+(pos+1)+" was already written to the full alignment. Are the vcf files sorted?");
+		if(pos>=blockStarts[sample]+BLOCK_SIZE)
+			return reference.charAt(pos);
+		return (char)(blocks[sample][pos-blockStarts[sample]] & 0xFF);
+	}
+	
+	@Override
+	public void set(int pos, int sample, char call)
+	{
+		if(pos<blockStarts[sample])
+			throw new Error("ERROR: Position "+(pos+1)+" was already written to the full alignment. Are the vcf files sorted?");
+		
+		while(pos>=blockStarts[sample]+BLOCK_SIZE)
+		{
+			flush(sample);
+			blockStarts[sample] += BLOCK_SIZE;
+			fill(sample);
+		}
+		
+		blocks[sample][pos-blockStarts[sample]] = (byte)call;
+		calls.set(pos, sample, call);
+	}
+	
+	@Override
+	public void getRow(int sample, int start, int end, byte[] dest)
+	{
+		for(int pos=start; pos<end; pos++)
+			dest[pos-start] = (byte)get(pos, sample);
+	}
+	
+	@Override
+	public int length()
+	{
+		return reference.length();
+	}
+	
+	@Override
+	public int numSamples()
+	{
+		return blocks.length;
+	}
+	
+	/**
+	 * Writes the rest of all rows and closes the alignment.
+	 * 
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		for(int sample=0; sample<blocks.length; sample++)
+		{
+			while(blockStarts[sample]<reference.length())
+			{
+				flush(sample);
+				blockStarts[sample] += BLOCK_SIZE;
+				fill(sample);
+			}
+		}
+		alignment.close();
+	}
+	
+	private void fill(int sample)
+	{
+		int start = blockStarts[sample];
+		int end = Math.min(start+BLOCK_SIZE, reference.length());
+		if(start<end)
+			reference.copy(start, end, blocks[sample], 0);
+	}
+	
+	private void flush(int sample)
+	{
+		int start = blockStarts[sample];
+		int end = Math.min(start+BLOCK_SIZE, reference.length());
+		if(start>=end)
+			return;
+		
+		try
+		{
+			alignment.write(sample+1, start, blocks[sample], 0, end-start);
+		}
+		catch(IOException e)
+		{
+			throw new Error("ERROR: Could not write the full alignment: "+e.getMessage(), e);
+		}
+	}
+}
@@ -0,0 +1,154 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the full alignment (one row per sequence over the whole
+ * reference genome) in FASTA format while the rows are still incomplete.
+ * 
+ * All rows have the same length, so the position of every base in the
+ * file is known in advance. Slices of the rows can therefore be written
+ * in any order to their final place. The file has the same layout as
+ * written by {@link FASTAWriter} (60 bases per line).
+ *
+ */
+public class FullAlignmentWriter
+{
+	private static final int LINE_LENGTH = 60;
+	
+	/** the number of bases of a row that are written at once by the row methods */
+	private static final int BLOCK_SIZE = 1<<16;
+	
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+	
+	private final RandomAccessFile file;
+	
+	private final FileChannel channel;
+	
+	private final int length;
+	
+	/** the offsets of the first base of each row */
+	private final long[] rowOffsets;
+	
+	private byte[] block = new byte[0];
+	
+	/**
+	 * Creates the file and writes the headers of all rows.
+	 * 
+	 * @param outFile	the FASTA file
+	 * @param names	the names of the rows
+	 * @param length	the length of all rows
+	 * @throws IOException
+	 */
+	public FullAlignmentWriter(File outFile, String[] names, int length) throws IOException
+	{
+		this.file = new RandomAccessFile(outFile, "rw");
+		this.channel = file.getChannel();
+		this.length = length;
+		this.rowOffsets = new long[names.length];
+		
+		file.setLength(0);
+		
+		long rowLength = length+(long)((length+LINE_LENGTH-1)/LINE_LENGTH)*LINE_SEPARATOR.length;
+		long offset = 0;
+		byte[] header;
+		for(int row=0; row<names.length; row++)
+		{
+			header = (">"+names[row]+System.lineSeparator()).getBytes(Charset.defaultCharset());
+			channel.write(ByteBuffer.wrap(header), offset);
+			
+			rowOffsets[row] = offset+header.length;
+			offset = rowOffsets[row]+rowLength;
+		}
+		file.setLength(offset);
+	}
+	
+	/**
+	 * Writes a slice of a row. Slices can be written by several threads.
+	 * 
+	 * The bases are copied line by line into a block that already holds
+	 * the line breaks, which is written at once.
+	 * 
+	 * @param row	the index of the row
+	 * @param start	0-based position of the first base in the row
+	 * @param bases	the bases
+	 * @param off	the index of the first base in bases
+	 * @param len	the number of bases
+	 * @throws IOException
+	 */
+	public synchronized void write(int row, int start, byte[] bases, int off, int len) throws IOException
+	{
+		int capacity = len+(len/LINE_LENGTH+2)*LINE_SEPARATOR.length;
+		if(block.length<capacity)
+			block = new byte[capacity];
+		
+		int size = 0;
+		int end = start+len;
+		int lineEnd;
+		for(int pos=start; pos<end; pos=lineEnd)
+		{
+			lineEnd = Math.min((pos/LINE_LENGTH+1)*LINE_LENGTH, end);
+			System.arraycopy(bases, off+pos-start, block, size, lineEnd-pos);
+			size += lineEnd-pos;
+			
+			if(lineEnd%LINE_LENGTH==0 || lineEnd==length)
+			{
+				System.arraycopy(LINE_SEPARATOR, 0, block, size, LINE_SEPARATOR.length);
+				size += LINE_SEPARATOR.length;
+			}
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(block, 0, size);
+		long offset = rowOffsets[row]+start+(long)(start/LINE_LENGTH)*LINE_SEPARATOR.length;
+		while(buffer.hasRemaining())
+			offset += channel.write(buffer, offset);
+	}
+	
+	/**
+	 * Writes a whole row with the reference genome.
+	 * 
+	 * @param row	the index of the row
+	 * @param reference	the reference genome
+	 * @throws IOException
+	 */
+	public void writeReference(int row, ReferenceGenome reference) throws IOException
+	{
+		byte[] bases = new byte[BLOCK_SIZE];
+		int end;
+		for(int start=0; start<length; start+=BLOCK_SIZE)
+		{
+			end = Math.min(start+BLOCK_SIZE, length);
+			reference.copy(start, end, bases, 0);
+			write(row, start, bases, 0, end-start);
+		}
+	}
+	
+	/**
+	 * Writes a whole row with the calls of a sample.
+	 * 
+	 * @param row	the index of the row
+	 * @param matrix	the base calls
+	 * @param sample	the index of the sample in the matrix
+	 * @throws IOException
+	 */
+	public void writeRow(int row, GenotypeMatrix matrix, int sample) throws IOException
+	{
+		byte[] bases = new byte[BLOCK_SIZE];
+		int end;
+		for(int start=0; start<length; start+=BLOCK_SIZE)
+		{
+			end = Math.min(start+BLOCK_SIZE, length);
+			matrix.getRow(sample, start, end, bases);
+			write(row, start, bases, 0, end-start);
+		}
+	}
+	
+	public void close() throws IOException
+	{
+		channel.close();
+		file.close();
+	}
+}
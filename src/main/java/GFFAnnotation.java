@@ -0,0 +1,443 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The genes and CDS of a GFF annotation.
+ *
+ * The file is parsed in one pass: the genes, the CDS and the descriptions
+ * (product or pseudo) by locus tag, parent ID and position are collected at
+ * the same time, then the descriptions are set for the genes. The result is
+ * kept for the run and written to a binary cache next to the GFF file
+ * (filename.cache), which is used instead of the text as long as the
+ * length and the checksum of the GFF file match.
+ *
+ */
+public class GFFAnnotation
+{
+	private static final String CACHE_SUFFIX = ".cache";
+	
+	private static final int CACHE_MAGIC = 0x47464643;
+	private static final int CACHE_VERSION = 2;
+	
+	/** the annotations read in this run (by absolute path) */
+	private static final Map<String,GFFAnnotation> loaded = new HashMap<String, GFFAnnotation>();
+	
+	private final List<Gene> genes;
+	
+	private final List<Gene> cdss;
+	
+	private GFFAnnotation(List<Gene> genes, List<Gene> cdss)
+	{
+		this.genes = Collections.unmodifiableList(genes);
+		this.cdss = Collections.unmodifiableList(cdss);
+	}
+	
+	/**
+	 * @return	the features of type gene (with descriptions), in the order of the file
+	 */
+	public List<Gene> getGenes()
+	{
+		return genes;
+	}
+	
+	/**
+	 * @return	the features of type CDS, in the order of the file
+	 */
+	public List<Gene> getCDSs()
+	{
+		return cdss;
+	}
+	
+	/**
+	 * Returns the annotation of a GFF file. A file is only read once per
+	 * run; if its cache is up to date the text is not parsed at all.
+	 *
+	 * @param filename	the GFF file
+	 * @return	the annotation
+	 * @throws Exception
+	 */
+	public static GFFAnnotation load(String filename) throws Exception
+	{
+		String path = new File(filename).getAbsolutePath();
+		
+		synchronized(loaded)
+		{
+			GFFAnnotation annotation = loaded.get(path);
+			if(annotation==null)
+			{
+				annotation = read(filename);
+				loaded.put(path, annotation);
+			}
+			return annotation;
+		}
+	}
+	
+	private static GFFAnnotation read(String filename) throws Exception
+	{
+		File cache = new File(filename+CACHE_SUFFIX);
+		long length = new File(filename).length();
+		long checksum;
+		
+		try
+		{
+			checksum = checksum(filename);
+		}
+		catch(Throwable e)
+		{
+			throw new Exception("A problem occured while parsing the GFF annotation:\n"+filename+"\n"+e.toString(),e);
+		}
+		
+		if(cache.exists())
+		{
+			GFFAnnotation annotation = null;
+			try
+			{
+				annotation = readCache(cache, length, checksum);
+			}
+			catch(Exception e)
+			{
+				//damaged cache, parse the text
+			}
+			if(annotation!=null)
+				return annotation;
+		}
+		
+		GFFAnnotation annotation = parse(filename);
+		
+		try
+		{
+			annotation.writeCache(cache, length, checksum);
+		}
+		catch(Exception e)
+		{
+			System.err.println("Could not write GFF cache "+cache+" ("+e.getMessage()+"). The annotation is only kept in memory.");
+		}
+		
+		return annotation;
+	}
+	
+	/**
+	 * @return	the CRC32 of the content of the file
+	 */
+	private static long checksum(String filename) throws IOException
+	{
+		CRC32 crc = new CRC32();
+		
+		InputStream in = new FileInputStream(filename);
+		byte[] buffer = new byte[1<<16];
+		int read;
+		while((read=in.read(buffer))!=-1)
+			crc.update(buffer, 0, read);
+		in.close();
+		
+		return crc.getValue();
+	}
+	
+	/**
+	 * Parses the text of a GFF file.
+	 */
+	private static GFFAnnotation parse(String filename) throws Exception
+	{
+		List<Gene> genes = new ArrayList<Gene>();
+		List<Gene> cdss = new ArrayList<Gene>();
+		
+		try {
+		
+		Map<String,String> locusTag2DescMap = new HashMap<String, String>();
+		Map<String,String> parentId2DescMap = new HashMap<String, String>();
+		Map<String,String> position2DescMap = new HashMap<String, String>();
+		
+		BufferedReader r = new BufferedReader(new FileReader(filename));
+		
+		String line;
+		
+		String id;
+		String type;
+		int start;
+		int end;
+		char strand;
+		String desc;
+		String idAsParent;
+		
+		//the attributes used (the last value of a key counts)
+		String locusTag;
+		String attId;
+		String parent;
+		String product;
+		boolean pseudo;
+		
+		String[] cells;
+		String[] attcells;
+		String key;
+		String value;
+		
+		for(line=r.readLine();line!=null;line=r.readLine())
+		{
+			line=line.trim();
+			if(line.length()==0)
+				continue;
+			if(line.charAt(0)=='#')
+				continue;
+			
+			cells = line.split("\t");
+			
+			//type = 2
+			type = cells[2];
+			
+			// start = 3
+			start = Integer.parseInt(cells[3]);
+			
+			// end = 4
+			end = Integer.parseInt(cells[4]);
+			
+			// strand = 6
+			strand = cells[6].charAt(0);
+			
+			locusTag = null;
+			attId = null;
+			parent = null;
+			product = null;
+			pseudo = false;
+			
+			if(cells.length>=9)
+				for(String s : cells[8].split(";"))
+				{
+					attcells = s.split("=");
+					if(attcells.length==2)
+						value = attcells[1].trim();
+					else if(attcells.length==1)
+						value = "";
+					else
+						continue;
+					
+					key = attcells[0].trim();
+					if(key.equals("locus_tag"))
+						locusTag = value;
+					else if(key.equals("ID"))
+						attId = value;
+					else if(key.equals("Parent"))
+						parent = value;
+					else if(key.equals("product"))
+						product = value;
+					else if(key.equals("pseudo"))
+						pseudo = true;
+				}
+			
+			if(locusTag!=null)
+				id=locusTag;
+			else if(attId!=null)
+				id=attId;
+			else
+				id="locus"+start+"-"+end;
+			
+			idAsParent = attId;
+			
+			if(product!=null)
+				desc=product;
+			else
+				desc="";
+			
+			//locus tag to desc mapping
+			if(locusTag!=null)
+			{
+				if(product!=null)
+					locusTag2DescMap.put(locusTag, product);
+				
+				if(pseudo)
+					locusTag2DescMap.put(locusTag, "pseudo");
+			}
+			
+			//parent id to desc mapping
+			if(parent!=null)
+			{
+				if(product!=null)
+					parentId2DescMap.put(parent, product);
+				
+				if(pseudo)
+					parentId2DescMap.put(parent, "pseudo");
+			}
+			
+			//position to desc map
+			if(product!=null)
+				position2DescMap.put(start+"_"+end+"_"+strand, product);
+			
+			if(pseudo)
+				position2DescMap.put(start+"_"+end+"_"+strand, "pseudo");
+			
+			//create gene/CDS
+			if(type.equalsIgnoreCase("gene"))
+				genes.add(new Gene(id,desc,start,end,strand,idAsParent));
+			else if(type.equalsIgnoreCase("CDS"))
+				cdss.add(new Gene(id,desc,start,end,strand,idAsParent));
+		}
+		r.close();
+		
+		//set descriptions
+		for(Gene g:genes)
+			if(locusTag2DescMap.containsKey(g.name))
+				g.anno = locusTag2DescMap.get(g.name);
+			else if(parentId2DescMap.containsKey(g.idAsParent))
+				g.anno = parentId2DescMap.get(g.idAsParent);
+			else if(position2DescMap.containsKey(g.start+"_"+g.end+"_"+g.strand))
+				g.anno = position2DescMap.get(g.start+"_"+g.end+"_"+g.strand);
+			
+		}catch(Throwable e)
+		{
+			throw new Exception("A problem occured while parsing the GFF annotation:\n"+filename+"\n"+e.toString(),e);
+		}
+		
+		return new GFFAnnotation(genes, cdss);
+	}
+	
+	/**
+	 * @param cache	the cache file
+	 * @param length	the length of the GFF file
+	 * @param checksum	the checksum of the GFF file
+	 * @return	the annotation or null if the cache belongs to another version of the file
+	 * @throws Exception	if the cache is damaged
+	 */
+	private static GFFAnnotation readCache(File cache, long length, long checksum) throws Exception
+	{
+		//no count or string in the cache can be longer than the cache itself
+		long limit = cache.length();
+		
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cache), 1<<16));
+		try
+		{
+			if(in.readInt()!=CACHE_MAGIC || in.readInt()!=CACHE_VERSION || in.readLong()!=length || in.readLong()!=checksum)
+				return null;
+			
+			List<Gene> genes = readGenes(in, limit);
+			List<Gene> cdss = readGenes(in, limit);
+			if(in.read()!=-1)
+				throw new IOException("Data after the end of the cache");
+			
+			return new GFFAnnotation(genes, cdss);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	private void writeCache(File cache, long length, long checksum) throws Exception
+	{
+		//written under another name first, so no other run reads a partial cache
+		File tmp = new File(cache.getPath()+".tmp");
+		
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1<<16));
+		try
+		{
+			out.writeInt(CACHE_MAGIC);
+			out.writeInt(CACHE_VERSION);
+			out.writeLong(length);
+			out.writeLong(checksum);
+			
+			writeGenes(out, genes);
+			writeGenes(out, cdss);
+		}
+		finally
+		{
+			out.close();
+		}
+		
+		if(!tmp.renameTo(cache))
+		{
+			cache.delete();
+			if(!tmp.renameTo(cache))
+			{
+				tmp.delete();
+				throw new IOException("cannot rename "+tmp);
+			}
+		}
+	}
+	
+	private static List<Gene> readGenes(DataInputStream in, long limit) throws IOException
+	{
+		int count = in.readInt();
+		if(count<0 || count>limit)
+			throw new IOException("Invalid number of features in the cache: "+count);
+		List<Gene> genes = new ArrayList<Gene>(count);
+		
+		String name;
+		String anno;
+		int start;
+		int end;
+		char strand;
+		for(int i=0; i<count; i++)
+		{
+			name = readString(in, limit);
+			anno = readString(in, limit);
+			start = in.readInt();
+			end = in.readInt();
+			strand = in.readChar();
+			genes.add(new Gene(name, anno, start, end, strand, readString(in, limit)));
+		}
+		
+		return genes;
+	}
+	
+	private static void writeGenes(DataOutputStream out, List<Gene> genes) throws IOException
+	{
+		out.writeInt(genes.size());
+		for(Gene g : genes)
+		{
+			writeString(out, g.name);
+			writeString(out, g.anno);
+			out.writeInt(g.start);
+			out.writeInt(g.end);
+			out.writeChar(g.strand);
+			writeString(out, g.idAsParent);
+		}
+	}
+	
+	/**
+	 * Reads a string written by {@link #writeString(DataOutputStream, String)}.
+	 * 
+	 * @param limit	the largest valid length (the length of the cache)
+	 */
+	private static String readString(DataInputStream in, long limit) throws IOException
+	{
+		int length = in.readInt();
+		if(length==-1)
+			return null;
+		if(length<0 || length>limit)
+			throw new IOException("Invalid string length in the cache: "+length);
+		
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Writes the UTF-8 bytes of a string (or null) after their number.
+	 */
+	private static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		if(s==null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+}
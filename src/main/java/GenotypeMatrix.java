@@ -0,0 +1,43 @@
+/**
+ * Base calls of all samples along the reference genome.
+ * 
+ * Every cell initially holds the reference base of its position.
+ *
+ */
+public interface GenotypeMatrix
+{
+	/**
+	 * @param pos	the 0-based genome position
+	 * @param sample	the sample index
+	 * @return	the base call of the sample at the given position
+	 */
+	public char get(int pos, int sample);
+	
+	/**
+	 * @param pos	the 0-based genome position
+	 * @param sample	the sample index
+	 * @param call	the base call of the sample at the given position
+	 */
+	public void set(int pos, int sample, char call);
+	
+	/**
+	 * Copies the base calls of a sample at a range of positions, one byte
+	 * per call.
+	 * 
+	 * @param sample	the sample index
+	 * @param start	the 0-based position of the first call
+	 * @param end	the 0-based position after the last call
+	 * @param dest	the array the calls are copied to (starting at index 0)
+	 */
+	public void getRow(int sample, int start, int end, byte[] dest);
+	
+	/**
+	 * @return	the number of genome positions
+	 */
+	public int length();
+	
+	/**
+	 * @return	the number of samples
+	 */
+	public int numSamples();
+}
@@ -0,0 +1,196 @@
+import java.util.Arrays;
+
+/**
+ * The base calls and allele frequencies of all samples in a window of
+ * consecutive genome positions.
+ * 
+ * The window is moved along the genome while the VCF files are parsed in
+ * lockstep (see {@link StreamingEngine}), so memory scales with the number
+ * of samples times the window size instead of the genome length. The
+ * {@link #calls()}, {@link #uncertainCalls()} and {@link #frequencies()}
+ * views only hold positions inside of the current window.
+ * 
+ * The calls of a sample are kept in one array per sample (one byte per
+ * call), so a row of the window can be written at once. Frequencies are
+ * quantised to per mille like in {@link SparseAlleleFrequencies}.
+ *
+ */
+public class GenotypeWindow
+{
+	private final ReferenceGenome reference;
+	
+	private final int size;
+	
+	private final byte[][] calls;
+	
+	private final byte[][] uncertainCalls;
+	
+	private final short[][] perMille;
+	
+	private int start;
+	
+	private int end;
+	
+	/**
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples
+	 * @param size	the number of positions in the window
+	 */
+	public GenotypeWindow(ReferenceGenome reference, int numSamples, int size)
+	{
+		this.reference = reference;
+		this.size = size;
+		this.calls = new byte[numSamples][size];
+		this.uncertainCalls = new byte[numSamples][size];
+		this.perMille = new short[numSamples][size];
+	}
+	
+	/**
+	 * Moves the window and sets all cells to the reference base (and all
+	 * frequencies to 0).
+	 * 
+	 * @param start	0-based position of the first position in the window
+	 */
+	public void reset(int start)
+	{
+		this.start = start;
+		this.end = Math.min(start+size, reference.length());
+		
+		for(int sample=0; sample<calls.length; sample++)
+		{
+			reference.copy(start, end, calls[sample], 0);
+			reference.copy(start, end, uncertainCalls[sample], 0);
+			Arrays.fill(perMille[sample], (short)0);
+		}
+	}
+	
+	/**
+	 * @return	0-based position of the first position in the window
+	 */
+	public int start()
+	{
+		return start;
+	}
+	
+	/**
+	 * @return	0-based position after the last position in the window
+	 */
+	public int end()
+	{
+		return end;
+	}
+	
+	/**
+	 * @param sample	the sample index
+	 * @return	the calls of the sample, starting at the first position of the window
+	 */
+	public byte[] row(int sample)
+	{
+		return calls[sample];
+	}
+	
+	public int numSamples()
+	{
+		return calls.length;
+	}
+	
+	char getCall(int pos, int sample)
+	{
+		return (char)(calls[sample][index(pos)] & 0xFF);
+	}
+	
+	char getUncertainCall(int pos, int sample)
+	{
+		return (char)(uncertainCalls[sample][index(pos)] & 0xFF);
+	}
+	
+	short getPerMille(int pos, int sample)
+	{
+		return perMille[sample][index(pos)];
+	}
+	
+	private int index(int pos)
+	{
+		if(pos<start || pos>=end)
+			throw new Error("ERROR: Position "+(pos+1)+" is outside of the window from "+(start+1)+" to "+end+". Are the vcf files sorted?");
+		return pos-start;
+	}
+	
+	/**
+	 * @return	the base calls of the window
+	 */
+	public GenotypeMatrix calls()
+	{
+		return new Matrix(calls);
+	}
+	
+	/**
+	 * @return	the base calls (with uncertainty calls) of the window
+	 */
+	public GenotypeMatrix uncertainCalls()
+	{
+		return new Matrix(uncertainCalls);
+	}
+	
+	/**
+	 * @return	the allele frequencies of the window
+	 */
+	public AlleleFrequencies frequencies()
+	{
+		return new AlleleFrequencies()
+		{
+			@Override
+			public double get(int pos, int sample)
+			{
+				return perMille[sample][index(pos)]/1000d;
+			}
+			
+			@Override
+			public void set(int pos, int sample, double freq)
+			{
+				perMille[sample][index(pos)] = (short)Math.round(freq*1000d);
+			}
+		};
+	}
+	
+	private class Matrix implements GenotypeMatrix
+	{
+		private final byte[][] cells;
+		
+		Matrix(byte[][] cells)
+		{
+			this.cells = cells;
+		}
+		
+		@Override
+		public char get(int pos, int sample)
+		{
+			return (char)(cells[sample][index(pos)] & 0xFF);
+		}
+		
+		@Override
+		public void set(int pos, int sample, char call)
+		{
+			cells[sample][index(pos)] = (byte)call;
+		}
+		
+		@Override
+		public void getRow(int sample, int start, int end, byte[] dest)
+		{
+			if(start<end)
+				System.arraycopy(cells[sample], index(start), dest, 0, index(end-1)+1-index(start));
+		}
+		
+		@Override
+		public int length()
+		{
+			return reference.length();
+		}
+		
+		@Override
+		public int numSamples()
+		{
+			return cells.length;
+		}
+	}
+}
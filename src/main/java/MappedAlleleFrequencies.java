@@ -0,0 +1,63 @@
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Holds the allele frequencies in a memory-mapped file instead of the Java heap.
+ * 
+ * Each sample column is mapped separately (in segments of at most 1 GB). 
+ * The file is deleted when the program exits.
+ *
+ */
+public class MappedAlleleFrequencies implements AlleleFrequencies
+{
+	private static final int SEGMENT_BITS = 27;
+	
+	private static final int SEGMENT_MASK = (1<<SEGMENT_BITS)-1;
+	
+	private final DoubleBuffer[][] columns;
+	
+	/**
+	 * @param length	the number of genome positions
+	 * @param numSamples	the number of samples
+	 * @param file	the file backing the frequencies
+	 * @throws Exception
+	 */
+	public MappedAlleleFrequencies(int length, int numSamples, File file) throws Exception
+	{
+		int numSegments = (int)(((long)length+SEGMENT_MASK)>>>SEGMENT_BITS);
+		
+		columns = new DoubleBuffer[numSamples][numSegments];
+		
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		FileChannel channel = raf.getChannel();
+		
+		long offset = 0;
+		int segmentLength;
+		for(int sample=0; sample<numSamples; sample++)
+			for(int segment=0; segment<numSegments; segment++)
+			{
+				segmentLength = Math.min(SEGMENT_MASK+1, length-(segment<<SEGMENT_BITS));
+				columns[sample][segment] = channel.map(FileChannel.MapMode.READ_WRITE, offset, segmentLength*8L).asDoubleBuffer();
+				offset += segmentLength*8L;
+			}
+		
+		//the mappings stay valid after the channel is closed
+		raf.close();
+	}
+	
+	@Override
+	public double get(int pos, int sample)
+	{
+		return columns[sample][pos>>>SEGMENT_BITS].get(pos & SEGMENT_MASK);
+	}
+	
+	@Override
+	public void set(int pos, int sample, double freq)
+	{
+		columns[sample][pos>>>SEGMENT_BITS].put(pos & SEGMENT_MASK, freq);
+	}
+}
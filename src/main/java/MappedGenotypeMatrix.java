@@ -0,0 +1,107 @@
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A packed 4-bit genotype matrix (see {@link PackedGenotypeMatrix}) that lives
+ * in a memory-mapped file instead of the Java heap.
+ *
+ * Each sample column is mapped separately. The operating system decides
+ * which parts of the matrix are held in memory, so the matrix can be larger
+ * than the heap. The file is deleted when the program exits.
+ *
+ */
+public class MappedGenotypeMatrix implements GenotypeMatrix
+{
+	private final int length;
+
+	private final MappedByteBuffer[] columns;
+
+	private final PackedGenotypeMatrix.EscapedCalls exceptions;
+
+	/**
+	 * Creates a matrix for the given number of samples in which every
+	 * cell holds the reference base of its position.
+	 *
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples (columns)
+	 * @param file	the file backing the matrix
+	 * @throws Exception
+	 */
+	public MappedGenotypeMatrix(ReferenceGenome reference, int numSamples, File file) throws Exception
+	{
+		this.length = reference.length();
+		this.columns = new MappedByteBuffer[numSamples];
+		Map<Integer,Character> templateExceptions = new HashMap<Integer, Character>();
+		byte[] template = PackedGenotypeMatrix.pack(reference, templateExceptions);
+		this.exceptions = new PackedGenotypeMatrix.EscapedCalls(templateExceptions, numSamples);
+
+		file.deleteOnExit();
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		FileChannel channel = raf.getChannel();
+
+		for(int sample=0; sample<numSamples; sample++)
+		{
+			columns[sample] = channel.map(FileChannel.MapMode.READ_WRITE, (long)sample*template.length, template.length);
+			columns[sample].put(template);
+		}
+
+		//the mappings stay valid after the channel is closed
+		raf.close();
+	}
+
+	@Override
+	public char get(int pos, int sample)
+	{
+		int code = (columns[sample].get(pos>>>1)>>>((pos&1)<<2)) & 0xF;
+
+		if(code==PackedGenotypeMatrix.ESCAPE)
+			return exceptions.get(pos, sample);
+
+		return PackedGenotypeMatrix.decode(code);
+	}
+
+	@Override
+	public void set(int pos, int sample, char call)
+	{
+		MappedByteBuffer column = columns[sample];
+		int shift = (pos&1)<<2;
+		int code = PackedGenotypeMatrix.encode(call);
+		byte b = column.get(pos>>>1);
+
+		if(code==PackedGenotypeMatrix.ESCAPE)
+			exceptions.put(pos, sample, call);
+		else if(((b>>>shift) & 0xF)==PackedGenotypeMatrix.ESCAPE)
+			exceptions.remove(pos, sample);
+
+		column.put(pos>>>1, (byte)((b & ~(0xF<<shift)) | (code<<shift)));
+	}
+
+	@Override
+	public void getRow(int sample, int start, int end, byte[] dest)
+	{
+		MappedByteBuffer column = columns[sample];
+		int code;
+		for(int pos=start; pos<end; pos++)
+		{
+			code = (column.get(pos>>>1)>>>((pos&1)<<2)) & 0xF;
+			dest[pos-start] = code==PackedGenotypeMatrix.ESCAPE ? (byte)exceptions.get(pos, sample) : PackedGenotypeMatrix.decodeByte(code);
+		}
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public int numSamples()
+	{
+		return columns.length;
+	}
+}
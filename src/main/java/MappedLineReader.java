@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads the lines of an uncompressed VCF file directly from a memory-mapped
+ * window of the file.
+ * 
+ * The lines are slices of the mapping, so the file content is neither
+ * copied nor decoded. When a line reaches beyond the window, the next
+ * window is mapped starting at that line. The windows only cover the
+ * part of the file that is read (plus some bytes for the last line), so
+ * small parts map little memory.
+ *
+ */
+public class MappedLineReader implements VCFLineReader
+{
+	private static final int WINDOW_SIZE = 1<<26;
+	
+	/** bytes mapped beyond the end of the part for the line that reaches over it */
+	private static final int OVERHANG = 1<<16;
+	
+	private final RandomAccessFile raf;
+	
+	private final FileChannel channel;
+	
+	private final long startOffset;
+	
+	private final long fileLength;
+	
+	/** offset of the end of the part in the file */
+	private final long endOffset;
+	
+	private MappedByteBuffer window;
+	
+	/** offset of the window in the file */
+	private long windowOffset;
+	
+	private int lineStart = 0;
+	
+	private int lineEnd = 0;
+	
+	private int nextLineStart = 0;
+	
+	/**
+	 * @param file	the VCF file
+	 * @param offset	the offset in the file the lines are read from
+	 * @param length	the number of bytes of the part that is read
+	 * 					(the line reaching over its end is read as well)
+	 * @throws IOException
+	 */
+	public MappedLineReader(String file, long offset, long length) throws IOException
+	{
+		this.raf = new RandomAccessFile(file, "r");
+		this.channel = raf.getChannel();
+		this.startOffset = offset;
+		this.fileLength = channel.size();
+		this.endOffset = length<fileLength-offset ? offset+length : fileLength;
+		
+		map(offset, 0);
+	}
+	
+	/**
+	 * Maps a window of the rest of the part (at most WINDOW_SIZE bytes) plus
+	 * the overhang, at least the given number of bytes.
+	 */
+	private void map(long offset, long minSize) throws IOException
+	{
+		long size = Math.min(Math.max(endOffset-offset, 0)+OVERHANG, WINDOW_SIZE);
+		size = Math.min(Math.max(size, minSize), Integer.MAX_VALUE);
+		
+		windowOffset = offset;
+		window = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size, fileLength-offset));
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		lineStart = nextLineStart;
+		int scan = lineStart;
+		int limit;
+		
+		while(true)
+		{
+			limit = window.limit();
+			for(int i=scan; i<limit; i++)
+			{
+				if(window.get(i)=='\n')
+				{
+					setLine(i, i+1);
+					return true;
+				}
+			}
+			
+			if(windowOffset+limit==fileLength)
+			{
+				if(lineStart<limit)
+				{
+					setLine(limit, limit);
+					return true;
+				}
+				return false;
+			}
+			
+			//continue in a window starting at the current line
+			scan = limit-lineStart;
+			map(windowOffset+lineStart, 2L*scan);
+			lineStart = 0;
+		}
+	}
+	
+	@Override
+	public ByteBuffer buffer()
+	{
+		return window;
+	}
+	
+	@Override
+	public int start()
+	{
+		return lineStart;
+	}
+	
+	@Override
+	public int end()
+	{
+		return lineEnd;
+	}
+	
+	@Override
+	public long nextLineOffset()
+	{
+		return windowOffset+nextLineStart-startOffset;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		raf.close();
+	}
+	
+	private void setLine(int end, int next)
+	{
+		if(end>lineStart && window.get(end-1)=='\r')
+			end--;
+		lineEnd = end;
+		nextLineStart = next;
+	}
+}
@@ -1,16 +1,19 @@
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -35,7 +38,10 @@ public class MultiVCFAnalyzer {
 		
 		System.out.println(programName+" - "+version+"\nby "+author+"\n");
 		
-		String helpString = "Please start the program with the following parameters in exactly this order:\n\nSNP effect analysis result file (from SnpEff; txt format)\nReference genome fasta file\nReference genome gene annotation (gff)\nOutput directory\nWrite allele frequencies ('T' or 'F')\nMinimal genotyping quality (GATK)\nMinimal coverage for base call\nMinimal allele frequency for homozygous call\nMinimal allele frequency for heterozygous call\nList of positions to exclude (gff)\n[vcf_files ...] input vcf files as generated by the GATK UnifiedGenotyper\n\nTo omit an optional input file put NA as the file name.\nThe SnpEff file, the reference gene annotation, and excluded positions are optional.";
+		Map<String,String> options = new HashMap<String, String>();
+		args = parseOptions(args, options);
+		
+		String helpString = "Please start the program with the following parameters in exactly this order:\n\nSNP effect analysis result file (from SnpEff; txt format)\nReference genome fasta file\nReference genome gene annotation (gff)\nOutput directory\nWrite allele frequencies ('T' or 'F')\nMinimal genotyping quality (GATK)\nMinimal coverage for base call\nMinimal allele frequency for homozygous call\nMinimal allele frequency for heterozygous call\nList of positions to exclude (gff)\n[vcf_files ...] input vcf files as generated by the GATK UnifiedGenotyper (single-sample or multi-sample)\n\nTo omit an optional input file put NA as the file name.\nThe SnpEff file, the reference gene annotation, and excluded positions are optional.\n\nOptions (optional; put them before all other parameters):\n--storage=packed|sparse|mapped\tGenotype storage: packed 4-bit matrix (default), only calls that differ from the reference, or packed matrix in a memory-mapped file in the output directory\n--mode=matrix|stream|two-pass\tParse the VCF files one after another into a genome-wide genotype storage (default), all at once along the genome keeping only the calls at SNP positions, or twice (first finding the SNP positions, then keeping only the calls at these positions; each file is fully parsed in both passes)\n--threads=n\tNumber of threads parsing VCF files and writing the output files (default 1)\n--chunk-size=n\tSize in bytes of the parts VCF files are split into for parsing them on several threads (default 33554432, at least 65536)\n--inflate-threads=n\tNumber of threads decompressing BGZF compressed VCF files (default: number of processors; 0: decompress on the parsing threads)";
 		
 		if(args.length==0 || args[0].equalsIgnoreCase("--help") || args[0].equalsIgnoreCase("-help") || args[0].equalsIgnoreCase("-?") || args[0].equalsIgnoreCase("-h"))
 		{
@@ -75,17 +81,53 @@ public class MultiVCFAnalyzer {
 		double minHomSNPallelFreq = Double.parseDouble(args[7]);
 		double minHetSNPallelFreq = Double.parseDouble(args[8]);
 		
-		String positions2ExcludeFiles = args[9];//Can be upt to two files: 1st: repeat regs etc. 2nd: CDS file to exclude 1st,2nd codon pos
+		String storage = options.containsKey("storage") ? options.get("storage") : "packed";
+		
+		String mode = options.containsKey("mode") ? options.get("mode") : "matrix";
+		if(!mode.equalsIgnoreCase("matrix") && !mode.equalsIgnoreCase("stream") && !mode.equalsIgnoreCase("two-pass"))
+			throw new Error("ERROR: Unknown mode '"+mode+"'! Use 'matrix', 'stream' or 'two-pass'.");
+		boolean streaming = mode.equalsIgnoreCase("stream");
+		boolean twoPass = mode.equalsIgnoreCase("two-pass");
+		
+		int numThreads = options.containsKey("threads") ? Integer.parseInt(options.get("threads")) : 1;
+		if(numThreads<1)
+			throw new Error("ERROR: Invalid number of threads '"+numThreads+"'! Use at least 1.");
+		
+		long chunkSize = options.containsKey("chunk-size") ? Long.parseLong(options.get("chunk-size")) : 32L<<20;
+		if(chunkSize<VCFChunk.MIN_SIZE)
+			throw new Error("ERROR: Invalid chunk size '"+chunkSize+"'! Use at least "+VCFChunk.MIN_SIZE+".");
 		
-		Set<Integer> positions2ExcludeSet = getPositionsToExclude(positions2ExcludeFiles);
+		int numInflateThreads = options.containsKey("inflate-threads") ? Integer.parseInt(options.get("inflate-threads")) : Runtime.getRuntime().availableProcessors();
+		if(numInflateThreads<0)
+			throw new Error("ERROR: Invalid number of inflate threads '"+numInflateThreads+"'! Use 0 or more.");
+		
+		String positions2ExcludeFiles = args[9];//Can be upt to two files: 1st: repeat regs etc. 2nd: CDS file to exclude 1st,2nd codon pos
 		
 		int vcfArgumentsOffset = 10;
 		
-		int numVCFs = args.length-vcfArgumentsOffset;
+		int numFiles = args.length-vcfArgumentsOffset;
 		
-		String refGenome = FASTAParser.parseDNA(refFastaFile).values().iterator().next();
+		//sample names from the header of multi-sample VCF files, otherwise from the directory of the file
+		List<String> sampleNames = new ArrayList<String>();
+		List<List<String>> fileSampleNames = new ArrayList<List<String>>();
+		List<String> names;
+		for(int fileIndex=0; fileIndex<numFiles; fileIndex++)
+		{
+			names = VCFChunk.readSampleNames(args[fileIndex+vcfArgumentsOffset]);
+			if(names.size()<=1)
+				names = Arrays.asList(getSampleNameFromPath(args[fileIndex+vcfArgumentsOffset]));
+			fileSampleNames.add(names);
+			sampleNames.addAll(names);
+		}
 		
-		String refGenomeName = FASTAParser.parseDNA(refFastaFile).keySet().iterator().next();
+		//number of samples (columns of the matrices)
+		int numVCFs = sampleNames.size();
+		
+		ReferenceGenome refGenome = FASTAParser.parseReference(refFastaFile);
+		
+		String refGenomeName = refGenome.getName();
+		
+		ExcludedPositions excludedPositions = new ExcludedPositions(positions2ExcludeFiles, refGenome.length());
 		
 		int numOutgroups = 0;
 		
@@ -121,6 +163,10 @@ public class MultiVCFAnalyzer {
 		infobw.write("Minimal allele frequency for homozygous call: "+minHomSNPallelFreq+"\n");
 		infobw.write("Minimal allele frequency for heterozygous call: "+minHetSNPallelFreq+"\n");
 		infobw.write("Write allele frequencies: "+writeFreqsInStatTable+"\n");
+		infobw.write("Mode: "+mode+"\n");
+		if(!streaming && !twoPass)
+			infobw.write("Genotype storage: "+storage+"\n");
+		infobw.write("Threads: "+numThreads+"\n");
 		
 		infobw.write("\nAdditional notes:\n");
 		infobw.write("Reference genome name: "+refGenomeName+"\n");
@@ -139,34 +185,52 @@ public class MultiVCFAnalyzer {
 			infobw.write("Output directory did not exist and was created.\n");
 		}
 		
-		//SNP array
-		char[][] snpColumns = new char[refGenome.length()][numVCFs];
-		char[][] uncertainSnpColumns = new char[refGenome.length()][numVCFs];
+		//SNP array (filled with the reference)
+		//(when streaming only a window of it, the calls at SNP positions are kept in the store,
+		//in two-pass mode the store is created after the SNP positions are known)
+		GenotypeMatrix snpColumns;
+		GenotypeMatrix uncertainSnpColumns;
+		GenotypeWindow window = null;
+		SNPStore snpStore = null;
+		FullAlignmentMatrix alignmentColumns = null;
+		if(streaming)
+		{
+			window = new GenotypeWindow(refGenome, numVCFs, StreamingEngine.WINDOW_SIZE);
+			snpStore = new SNPStore(refGenome, numVCFs);
+			snpColumns = window.calls();
+			uncertainSnpColumns = window.uncertainCalls();
+		}
+		else if(twoPass)
+		{
+			snpColumns = null;
+			uncertainSnpColumns = null;
+		}
+		else
+		{
+			snpColumns = createGenotypeMatrix(storage, refGenome, numVCFs, new File(outputFolder+"/snpColumns.mapped"));
+			uncertainSnpColumns = createGenotypeMatrix(storage, refGenome, numVCFs, new File(outputFolder+"/uncertainSnpColumns.mapped"));
+		}
 		
-		Set<Integer> snpPositions = new HashSet<Integer>();
+		PositionSet snpPositions = new PositionSet(refGenome.length()+1);
 		
-		boolean[] missingDataPos = new boolean[refGenome.length()];
+		PositionSet missingDataPos = new PositionSet(refGenome.length());
 		
 		//Freq array
-		double[][] snpFrequencies = null;
-		if(writeFreqsInStatTable)
+		AlleleFrequencies snpFrequencies = null;
+		if(writeFreqsInStatTable && !twoPass)
 		{
-			snpFrequencies = new double[refGenome.length()][numVCFs];
+			if(streaming)
+				snpFrequencies = window.frequencies();
+			else if(storage.equalsIgnoreCase("mapped"))
+				snpFrequencies = new MappedAlleleFrequencies(refGenome.length(), numVCFs, new File(outputFolder+"/snpFrequencies.mapped"));
+			else
+				snpFrequencies = new SparseAlleleFrequencies(numVCFs);
 		}
 		
-		//Fill SNP array
-		for(int i=0; i<snpColumns.length; i++)
-			for(int j=0; j<numVCFs; j++)
-			{
-				snpColumns[i][j] = refGenome.charAt(i);
-				uncertainSnpColumns[i][j] = refGenome.charAt(i);
-			}
-		
 		
 		/////////////////////////
 		// BEGIN -- Parse VCFs //
 		/////////////////////////
-		BufferedReader br;
 		BufferedWriter statbw = new BufferedWriter(new FileWriter(outStatTable));
 		statbw.write("SNP statistics for "+numVCFs+" samples.\nQuality Threshold: "+minQual+"\nCoverage Threshold: "+minCov+"\nMinimum SNP allele frequency: "+minHomSNPallelFreq+"\n");
 		statbw.write("sample\tSNP Calls (all)\tSNP Calls (het)\tcoverage(fold)\tcoverage(percent)\trefCall\tallPos\tnoCall\tdiscardedRefCall\tdiscardedVarCall\tfilteredVarCall\tunhandledGenotype\n");
@@ -186,732 +250,241 @@ public class MultiVCFAnalyzer {
 
 		HashMap<String, Object> metric_map = new HashMap<>();
 
-		char nChar='N';
-		char rChar='R';
-		//counter
-		int covCount = 0;
-		int allPos = 0;
-		int noCallPos = 0;
-		int nonStandardRefChars = 0;
-		int refCallPos = 0;
-		int varCallPos = 0;
-		int hetVarCallPos = 0;
-		int discardedRefCall = 0;
-		int discardedVarCall = 0;
-		int filteredVarCall = 0;
-		int unknownCall = 0;
-		
-		int ns;
-		double nperc;
-		double covround;
-		
-		String line;
-		String[] cols;
-		
-		double qual;
-		int cov;
-		double SNPallelFreq;
-		String[] allelCols;
-		
-		int lastPos1based = 0;
-		int currPos1based = 0;
 		long startTime = System.currentTimeMillis();
 		long timeLeft;
-		boolean outgroup;
-		for(int vcfIndex =0; vcfIndex<numVCFs; vcfIndex++)
+		
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		ExecutorService inflatePool = numInflateThreads>0 ? Executors.newFixedThreadPool(numInflateThreads, new ThreadFactory()
 		{
-			br = new BufferedReader(new FileReader(args[vcfIndex+vcfArgumentsOffset]));
-			HashMap<String,Object> sample_map = new HashMap<>();
-			
-			System.out.println("Now processing "+(vcfIndex+1)+"/"+numVCFs+": "+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-			
-			//Is this an outgroup?
-			//If yes, do not consider positions that are only variant in the outgroup.
-			if(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]).startsWith("outgroup"))
+			@Override
+			public Thread newThread(Runnable r)
 			{
-				System.out.println("This is an outgroup! Outgroup-specific SNPs will not be considered.");
-				infobw.write(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset])+" was labeled as an outgroup.\n");
-				outgroup=true;
-				numOutgroups++;
+				Thread thread = new Thread(r, "inflate");
+				thread.setDaemon(true);
+				return thread;
 			}
-			else
-				outgroup=false;
-			
-			//counter
-			covCount=0;
-			allPos = 0;
-			noCallPos = 0;
-			nonStandardRefChars = 0;
-			refCallPos = 0;
-			varCallPos = 0;
-			hetVarCallPos = 0;
-			discardedRefCall = 0;
-			discardedVarCall = 0;
-			filteredVarCall = 0;
-			unknownCall = 0;
-			
-			lastPos1based = 0;
-			currPos1based = 0;
-			
-			while((line=br.readLine()) != null)
-			{
-				if(line.startsWith("#"))
-				{
-					continue;
-				}
-				
-				//count
-				allPos++;
-				
-				if(allPos%500000==0)
-					System.out.println(allPos+" positions processed.");
-				
-				cols = line.split("\t");
-				
-				//insert Ns at not handled sites, which are left out by GATK
-				lastPos1based=currPos1based;
-			
-				currPos1based = Integer.parseInt(cols[0]);
-				
-				
-				if(currPos1based-lastPos1based!=1)
-				{
-					if(lastPos1based>=currPos1based)
-						throw new Error("ERROR: Base calls in the vcf file are not sorted! (Note that multiple chromosomes are not supported.)");
-					
-					for(int i=lastPos1based+1; i<currPos1based; i++)
-					{
-						allPos++;
-						nonStandardRefChars++;
-						
-						snpColumns[currPos1based-1][vcfIndex] = nChar;
-						uncertainSnpColumns[currPos1based-1][vcfIndex] = nChar;
-						missingDataPos[currPos1based-1] = true;
-						
-					}
-				}
-				
-				allelCols = cols[9].split(":");
-				
-				//No call
-				if(allelCols[0].equals("./."))
-				{
-					noCallPos++;
-					
-					snpColumns[currPos1based-1][vcfIndex] = nChar;
-					uncertainSnpColumns[currPos1based-1][vcfIndex] = nChar;
-					missingDataPos[currPos1based-1] = true;
-					
-				}
-				//Reference Call
-				else if(allelCols[0].equals("0/0"))
-				{
-					qual = Double.parseDouble(cols[5]);
-					cov=Integer.parseInt(allelCols[1]);
-					covCount+=cov;
-					
-					if(qual>=minQual && cov >= minCov)
-					{
-						refCallPos++;
-						
-						// do nothing since reference is called
-					}
-					else
-					{
-						discardedRefCall++;
-						
-						snpColumns[currPos1based-1][vcfIndex] = nChar;
-						uncertainSnpColumns[currPos1based-1][vcfIndex] = rChar;
-						missingDataPos[currPos1based-1] = true;
-						
-					}
-				}
-				//variant call
-				else if(allelCols[0].equals("0/1") || allelCols[0].equals("1/1"))
-				{
-					qual = Double.parseDouble(cols[5]);
-					cov=Integer.parseInt(allelCols[1].split(",")[1]);
-					SNPallelFreq=Math.min((double)cov/(cov+Integer.parseInt(allelCols[1].split(",")[0])-1) , 1); // -1 because once doesn't count
-					
-					if(writeFreqsInStatTable)
-						snpFrequencies[currPos1based-1][vcfIndex] = SNPallelFreq;
-					
-					covCount+=cov+Integer.parseInt(allelCols[1].split(",")[0]);
-					
-					if(qual>=minQual && cov >= minCov && SNPallelFreq >= minHomSNPallelFreq)
-					{
-						if(positions2ExcludeSet.contains(currPos1based))
-							filteredVarCall++;
-						else
-							varCallPos++;
-						
-						snpColumns[currPos1based-1][vcfIndex] = cols[4].charAt(0);
-						uncertainSnpColumns[currPos1based-1][vcfIndex] = cols[4].charAt(0);
-						
-						if(!outgroup)
-							snpPositions.add(currPos1based);
-						
-					}
-					else if(qual>=minQual && cov >= minCov && SNPallelFreq >= minHetSNPallelFreq)
-					{
-						if(positions2ExcludeSet.contains(currPos1based))
-							filteredVarCall++;
-						else
-						{
-							varCallPos++;
-							hetVarCallPos++;
-						}
-						
-						snpColumns[currPos1based-1][vcfIndex] = getAmbiguousBase(snpColumns[currPos1based-1][vcfIndex] , cols[4].charAt(0));
-						uncertainSnpColumns[currPos1based-1][vcfIndex] = getAmbiguousBase(snpColumns[currPos1based-1][vcfIndex] , cols[4].charAt(0));
-
-						if(!outgroup)
-							snpPositions.add(currPos1based);
-						
-					}
-					else
-					{
-						cov=Integer.parseInt(allelCols[1].split(",")[0]);
-						
-						SNPallelFreq=(double)cov/(cov+Integer.parseInt(allelCols[1].split(",")[1])-1); // -1 because once doesn't count
-						
-						if(qual>=minQual && cov >= minCov)
-						{
-							if(SNPallelFreq>=minHomSNPallelFreq)
-							{
-								refCallPos++;
-							}
-							else
-							{
-								//System.err.println("DEBUG: "+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset])+" pos: "+currPos1based);
-								discardedVarCall++;
-								
-								snpColumns[currPos1based-1][vcfIndex] = nChar;
-								uncertainSnpColumns[currPos1based-1][vcfIndex] = nChar;
-
-								missingDataPos[currPos1based-1] = true;
-							}
-							// do nothing since reference is called
-						}
-						else
-						{
-							discardedVarCall++;
-							
-							snpColumns[currPos1based-1][vcfIndex] = nChar;
-							
-							if(allelCols[0].equals("1/1"))
-								uncertainSnpColumns[currPos1based-1][vcfIndex] = Character.toLowerCase(cols[4].charAt(0));
-							else
-								uncertainSnpColumns[currPos1based-1][vcfIndex] = nChar;
-
-							missingDataPos[currPos1based-1] = true;
-							
-						}
-					}
-					
-				}
-				//unhandled genotype
-				else
-				{
-					unknownCall++;
-					//System.err.println("WARNING: The Genotype "+allelCols[0]+" cannot be handled:\n"+line+"\nInserting 'N'!");
-					
-					snpColumns[currPos1based-1][vcfIndex] = nChar;
-					uncertainSnpColumns[currPos1based-1][vcfIndex] = nChar;
-					missingDataPos[currPos1based-1] = true;
-				}
-				
-			}
-			br.close();
-			
-			//write stats
-			ns = discardedRefCall+discardedVarCall+noCallPos+unknownCall+nonStandardRefChars;
-			nperc = Math.round(((ns*100d)/allPos)*100)/100d;
-			covround = Math.round((covCount/(double)allPos)*100)/100d;
-
-			statbw.write(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset])+"\t"+varCallPos+"\t"+hetVarCallPos+"\t"+covround+"\t"+(100-nperc)+"\t"+refCallPos+"\t"+allPos+"\t"+noCallPos+"\t"+discardedRefCall+"\t"+discardedVarCall+"\t"+filteredVarCall+"\t"+unknownCall+"\n");
-
-			//Write the same to JSON dictionary
-			sample_map.put("SNP Calls (all)",varCallPos );
-			sample_map.put("SNP Calls (het)", hetVarCallPos);
-			sample_map.put("coverage (fold)", covround);
-			sample_map.put("coverage (percent)", (100-nperc));
-			sample_map.put("refCall",refCallPos);
-			sample_map.put("allPos", allPos);
-			sample_map.put("noCall", noCallPos);
-			sample_map.put("discardedRefCall", discardedRefCall);
-			sample_map.put("discardedVarCall", discardedVarCall);
-			sample_map.put("filteredVarCall", filteredVarCall);
-			sample_map.put("unhandledGenotype", unknownCall);
-			//Put that back to metric_map for each sample
-			metric_map.put(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]), sample_map);
-	
-			//Time
-			timeLeft =Math.round(((System.currentTimeMillis()-startTime)/(double)(vcfIndex+1))*(numVCFs-(vcfIndex+1)));
-			System.out.println("\t("+Math.round(timeLeft/60000)+" minutes remaining)");
-		}
-		statbw.close();
-
-		//Write out the proper JSON file
-		json_map.put("metrics", metric_map);
-        Gson gson = new GsonBuilder().setPrettyPrinting().create();		
-
-		String json = gson.toJson(json_map);
-		jsonfw.write(json);
-		jsonfw.flush();
-        jsonfw.close();
-		//////////////////////
-		//END -- Parse VCFs //
-		//////////////////////
-		
-		// Check if SNP positions are really SNPs
-		
-		// Exclude Positions (like repeat regions)
-		
-		excludePositionsFromSet(snpPositions, positions2ExcludeFiles);
-		
-		
-		//create list
-		List<Integer> snpPositionList = new LinkedList<Integer>(snpPositions);
-		Collections.sort(snpPositionList);
+		}) : null;
+		List<VCFSampleParser> parsers = new ArrayList<VCFSampleParser>();
+		List<List<Future<?>>> results = new ArrayList<List<Future<?>>>();
 		
-		//Write SNP table
-		System.out.println("Writing SNP table:\n"+outSNPtable);
-		
-		BufferedWriter snptabbw = new BufferedWriter(new FileWriter(outSNPtable));
-		
-		snptabbw.write("Position\tRef");
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-		{
-			snptabbw.write("\t"+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-		}
-		snptabbw.newLine();
-		
-		char tmpchar;
-		for(int pos : snpPositionList)
+		List<boolean[]> fileOutgroups = new ArrayList<boolean[]>();
+		boolean[] outgroups;
+		for(int fileIndex=0; fileIndex<numFiles; fileIndex++)
 		{
-			snptabbw.write(pos+"\t"+refGenome.charAt(pos-1));
-			
-			for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+			names = fileSampleNames.get(fileIndex);
+			outgroups = new boolean[names.size()];
+			for(int sample=0; sample<names.size(); sample++)
 			{
-				snptabbw.write("\t");
-				tmpchar = snpColumns[pos-1][vcfIndex];
-				if(tmpchar==refGenome.charAt(pos-1))
-					snptabbw.write(".");
-				else
+				//Is this an outgroup?
+				//If yes, do not consider positions that are only variant in the outgroup.
+				if(names.get(sample).startsWith("outgroup"))
 				{
-					snptabbw.write(tmpchar);
-					
-					if(writeFreqsInStatTable && tmpchar!='N')
-					{
-						snptabbw.write(" ("+Math.round(snpFrequencies[pos-1][vcfIndex]*1000d)/10d+")");
-					}
+					infobw.write(names.get(sample)+" was labeled as an outgroup.\n");
+					outgroups[sample]=true;
+					numOutgroups++;
 				}
 			}
-			snptabbw.newLine();
+			fileOutgroups.add(outgroups);
 		}
 		
-		snptabbw.close();
-		
-		//Write SNP table with uncertainty calls
-		//Identical to previous code (3 differences)
-		System.out.println("Writing SNP table with uncertainty calls:\n"+outSNPtableWithUncertaintyCalls); // 1/3 differences
-		
-		snptabbw = new BufferedWriter(new FileWriter(outSNPtableWithUncertaintyCalls)); // 2/3 differences
-		
-		snptabbw.write("Position\tRef");
+		//rows of the full alignment
+		String[] rowNames = new String[numVCFs+1];
+		rowNames[0] = "Reference_"+refGenomeName;
 		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-		{
-			snptabbw.write("\t"+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-		}
-		snptabbw.newLine();
+			rowNames[vcfIndex+1] = sampleNames.get(vcfIndex);
 		
-		for(int pos : snpPositionList)
+		int firstIndex;
+		if(twoPass)
 		{
-			snptabbw.write(pos+"\t"+refGenome.charAt(pos-1));
+			//first pass: only find the SNP positions (the calls are dropped)
+			System.out.println("First pass: finding SNP positions...");
 			
-			for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+			PositionSet candidates = new PositionSet(refGenome.length()+1);
+			GenotypeMatrix dropped = new DiscardingGenotypeMatrix(refGenome, numVCFs);
+			VCFSampleParser parser;
+			
+			firstIndex = 0;
+			for(int fileIndex=0; fileIndex<numFiles; fileIndex++)
 			{
-				snptabbw.write("\t");
-				tmpchar = uncertainSnpColumns[pos-1][vcfIndex]; // 3/3 differences
-				if(tmpchar==refGenome.charAt(pos-1))
-					snptabbw.write(".");
-				else
-				{
-					snptabbw.write(tmpchar);
-					
-					if(writeFreqsInStatTable && tmpchar!='N')
-					{
-						snptabbw.write(" ("+Math.round(snpFrequencies[pos-1][vcfIndex]*1000d)/10d+")");
-					}
-				}
+				names = fileSampleNames.get(fileIndex);
+				parser = new VCFSampleParser(args[fileIndex+vcfArgumentsOffset], names, firstIndex, fileOutgroups.get(fileIndex), minQual, minCov, minHomSNPallelFreq, minHetSNPallelFreq, excludedPositions, dropped, dropped, null, candidates, missingDataPos, inflatePool, numInflateThreads);
+				parser.setQuiet(true);
+				results.add(parser.submit(pool, numThreads, chunkSize));
+				firstIndex += names.size();
 			}
-			snptabbw.newLine();
+			for(List<Future<?>> parts : results)
+				waitFor(parts, pool);
+			results.clear();
+			
+			excludedPositions.removeFrom(candidates);
+			int[] positions = candidates.toArray();
+			for(int i=0; i<positions.length; i++)
+				positions[i]--;
+			
+			//second pass: keep the calls at the SNP positions only
+			//(the full alignment is written on the way)
+			System.out.println("Second pass: keeping the calls at "+positions.length+" SNP positions...");
+			
+			snpStore = new SNPStore(refGenome, numVCFs, positions);
+			alignmentColumns = new FullAlignmentMatrix(refGenome, snpStore.calls(), new FullAlignmentWriter(new File(outFullAlignmentFasta), rowNames, refGenome.length()));
+			snpColumns = alignmentColumns;
+			uncertainSnpColumns = snpStore.uncertainCalls();
+			if(writeFreqsInStatTable)
+				snpFrequencies = snpStore.frequencies();
 		}
 		
-		snptabbw.close();
-		
-		//Write SNP multi fasta
-		BufferedWriter bw = new BufferedWriter(new FileWriter(outSNPfasta));
-		
-		System.out.println("Writing SNP alignment (fasta):\n"+outSNPfasta);
-		
-		StringBuffer tmpSeq;
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+		firstIndex = 0;
+		for(int fileIndex=0; fileIndex<numFiles; fileIndex++)
 		{
-			tmpSeq=new StringBuffer();
-			for(int pos : snpPositionList)
-				tmpSeq.append(snpColumns[pos-1][vcfIndex]);
+			names = fileSampleNames.get(fileIndex);
+			outgroups = fileOutgroups.get(fileIndex);
 			
-			FASTAWriter.write(bw, getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]), tmpSeq.toString());
+			parsers.add(new VCFSampleParser(args[fileIndex+vcfArgumentsOffset], names, firstIndex, outgroups, minQual, minCov, minHomSNPallelFreq, minHetSNPallelFreq, excludedPositions, snpColumns, uncertainSnpColumns, snpFrequencies, snpPositions, missingDataPos, inflatePool, numInflateThreads));
+			if(streaming)
+				results.add(new ArrayList<Future<?>>());
+			else
+				results.add(parsers.get(fileIndex).submit(pool, numThreads, chunkSize));
+			firstIndex += names.size();
 		}
 		
-		bw.close();
-		
-		//Write SNP multi fasta with reference genome 
-		
-		bw = new BufferedWriter(new FileWriter(outSNPfastaWithRef)); 
-		
-		System.out.println("Writing SNP alignment including reference genome (fasta):\n"+outSNPfastaWithRef);
-		
-		tmpSeq=new StringBuffer();
-		for(int pos : snpPositionList)
-			tmpSeq.append(refGenome.charAt(pos-1));
-		
-		FASTAWriter.write(bw, "Reference_"+refGenomeName, tmpSeq.toString());
-		
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+		if(streaming)
 		{
-			tmpSeq=new StringBuffer();
-			for(int pos : snpPositionList)
-				tmpSeq.append(snpColumns[pos-1][vcfIndex]);
+			//all files at once, window by window (the full alignment is written on the way)
+			new StreamingEngine(refGenome, parsers, window, snpStore, snpPositions, new FullAlignmentWriter(new File(outFullAlignmentFasta), rowNames, refGenome.length())).run(pool);
 			
-			FASTAWriter.write(bw, getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]), tmpSeq.toString());
+			snpColumns = snpStore.calls();
+			uncertainSnpColumns = snpStore.uncertainCalls();
+			if(writeFreqsInStatTable)
+				snpFrequencies = snpStore.frequencies();
 		}
-				
-		bw.close();
-		
-		//Write FULL multi fasta with reference genome 
-		
-		bw = new BufferedWriter(new FileWriter(outFullAlignmentFasta)); 
-		
-		System.out.println("Writing full alignment including reference genome (fasta):\n"+outFullAlignmentFasta);
+		pool.shutdown();
 		
-		tmpSeq=new StringBuffer();
-		for(int pos=1;pos<=refGenome.length();pos++)
-			tmpSeq.append(refGenome.charAt(pos-1));
-		
-		FASTAWriter.write(bw, "Reference_"+refGenomeName, tmpSeq.toString());
-		
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+		//collect the results in input order
+		SampleStatistics stats;
+		int sampleIndex = 0;
+		for(int fileIndex=0; fileIndex<numFiles; fileIndex++)
 		{
-			tmpSeq=new StringBuffer();
-			for(int pos=1;pos<=refGenome.length();pos++)
-				tmpSeq.append(snpColumns[pos-1][vcfIndex]);
+			waitFor(results.get(fileIndex), pool);
 			
-			FASTAWriter.write(bw, getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]), tmpSeq.toString());
-		}
+			for(int sample=0; sample<fileSampleNames.get(fileIndex).size(); sample++, sampleIndex++)
+			{
+				stats = parsers.get(fileIndex).getStatistics(sample);
 				
-		bw.close();
-		
-		//write Genotypes for Structure
-		bw = new BufferedWriter(new FileWriter(outGenoTypeTable4Structure));
-		
-		System.out.println("Writing genotypes for structure analysis:\n"+outGenoTypeTable4Structure);
+				//write stats
+				statbw.write(stats.toTableLine(sampleNames.get(sampleIndex)));
+				
+				//Write the same to JSON dictionary
+				//Put that back to metric_map for each sample
+				metric_map.put(sampleNames.get(sampleIndex), stats.toMap());
 		
-		//first row for linked loci
-		bw.append("-1");
-		int prevpos=0;
-		boolean first = true;
-		for(int pos : snpPositionList)
-		{
-			if(first)
-			{
-				first=false;
-				prevpos = pos;
-				continue;
-			}
-			else
-			{
-				bw.append("\t"+(pos-prevpos));
-				prevpos=pos;
+				//Time
+				timeLeft =Math.round(((System.currentTimeMillis()-startTime)/(double)(sampleIndex+1))*(numVCFs-(sampleIndex+1)));
+				System.out.println("\t("+Math.round(timeLeft/60000)+" minutes remaining)");
 			}
 		}
+		statbw.close();
 		
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
+		if(alignmentColumns!=null)
 		{
-			bw.newLine();
-			bw.append(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-			for(int pos : snpPositionList)
-				bw.append("\t"+getGenotypeEncoding(snpColumns[pos-1][vcfIndex]));
+			alignmentColumns.close();
+			snpColumns = snpStore.calls();
 		}
 		
-		bw.close();
+		if(inflatePool!=null)
+			inflatePool.shutdown();
+
+		//Write out the proper JSON file
+		json_map.put("metrics", metric_map);
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();		
+
+		String json = gson.toJson(json_map);
+		jsonfw.write(json);
+		jsonfw.flush();
+        jsonfw.close();
+		//////////////////////
+		//END -- Parse VCFs //
+		//////////////////////
 		
-		//write Genotypes for Structure (no missing data)
-		bw = new BufferedWriter(new FileWriter(outGenoTypeTable4StructureCompDel));
+		// Check if SNP positions are really SNPs
 		
-		System.out.println("Writing genotypes for structure analysis (no missing data columns):\n"+outGenoTypeTable4StructureCompDel);
+		// Exclude Positions (like repeat regions)
 		
-		//first row for linked loci
-		bw.append("-1");
-		prevpos = 0;
-		first = true;
-		for(int pos : snpPositionList)
-		{
-			if(!missingDataPos[pos-1])
-			{
-				if(first)
-				{
-					first=false;
-					prevpos = pos;
-					continue;
-				}
-				else
-				{
-					bw.append("\t"+(pos-prevpos));
-					prevpos=pos;
-				}
-			}
-		}
+		System.out.println("Excluding positions...");
+		System.out.println(excludedPositions.removeFrom(snpPositions)+" SNP positions excluded.");
 		
-		for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-		{
-			bw.newLine();
-			bw.append(getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-			for(int pos : snpPositionList)
-				if(!missingDataPos[pos-1])
-					bw.append("\t"+getGenotypeEncoding(snpColumns[pos-1][vcfIndex]));
-		}
 		
-		bw.close();
-
-		//Write SNPeff table
-		bw = new BufferedWriter(new FileWriter(outSNPtable4SnpEff));
+		//create sorted list
+		int[] snpPositionList = snpPositions.toArray();
 		
-		Set<Character> validChars = new HashSet<Character>();
-		validChars.add('A'); validChars.add('C'); validChars.add('G'); validChars.add('T');
+		//Write all outputs at the same time, they only read the matrices
+		final ResultWriter resultWriter = new ResultWriter(refGenome, sampleNames, snpPositionList, snpColumns);
+		OutputScheduler outputs = new OutputScheduler(numThreads);
 		
-		Set<Character> toChars = new HashSet<Character>();
-		char[] columnChars;
+		//Write all tables in one pass over the SNP positions
+		final SNPTableWriter tableWriter = new SNPTableWriter(refGenome, sampleNames, snpPositionList, snpColumns, uncertainSnpColumns, writeFreqsInStatTable ? snpFrequencies : null);
+		String tableMessages = "Writing SNP table:\n"+outSNPtable
+				+"\nWriting SNP table with uncertainty calls:\n"+outSNPtableWithUncertaintyCalls
+				+"\nWriting genotypes for structure analysis:\n"+outGenoTypeTable4Structure
+				+"\nWriting genotypes for structure analysis (no missing data columns):\n"+outGenoTypeTable4StructureCompDel;
 		
-		first=true;
+		tableWriter.add(tableWriter.callTable(outSNPtable, false, false));
+		tableWriter.add(tableWriter.callTable(outSNPtableWithUncertaintyCalls, true, false));
+		tableWriter.add(tableWriter.structureTable(outGenoTypeTable4Structure, null));
+		tableWriter.add(tableWriter.structureTable(outGenoTypeTable4StructureCompDel, missingDataPos));
+		tableWriter.add(tableWriter.snpEffInput(outSNPtable4SnpEff));
 		
-		for(int pos : snpPositionList)
+		//SNP tables with SnpEffInfos (with and without uncertainty calls)
+		if((new File(snpEffOutputFile)).exists())
 		{
-			toChars.clear();
-			columnChars = snpColumns[pos-1];
-			
-			for(char c : columnChars)
-			{
-				if(validChars.contains(c) && refGenome.charAt(pos-1)!=c)
-					toChars.add(c);
-			}
+			tableMessages += "\nWriting SNP table:\n"+outSNPtableWithSnpEffInfos+"\nWriting SNP table:\n"+outSNPtableWithUncertaintyCallsWithSnpEffInfos;
 			
-			for(char c : toChars)
-			{
-				if(!first)
-					bw.newLine();
-				else
-					first=false;
-				
-				bw.append(refGenomeName+"\t"+pos+"\t"+refGenome.charAt(pos-1)+"\t"+c);
-			}
+			tableWriter.setSnpEffInfos(snpEffOutputFile, refGFF);
+			tableWriter.add(tableWriter.callTable(outSNPtableWithSnpEffInfos, false, true));
+			tableWriter.add(tableWriter.callTable(outSNPtableWithUncertaintyCallsWithSnpEffInfos, true, true));
 		}
 		
-		bw.close();
-		
-		
-		//Write SNP table with SnpEffInfos
-		if((new File(snpEffOutputFile)).exists())
+		outputs.submit(tableMessages, new OutputScheduler.Output()
 		{
-			System.out.println("Writing SNP table:\n"+outSNPtableWithSnpEffInfos);
-			
-			
-			//SNPeff SNPs
-			List<SNPeffSNP> esnps = Read.readSNPeffSNPs(snpEffOutputFile);
-			
-			Map<Integer,List<SNPeffSNP>> esnpsmap = new HashMap<Integer, List<SNPeffSNP>>();
-			
-			for(SNPeffSNP esnp : esnps)
-			{
-				if(!esnpsmap.containsKey(esnp.getPos()))
-				{
-					esnpsmap.put(esnp.getPos(), new LinkedList<SNPeffSNP>());
-				}
-				
-				esnpsmap.get(esnp.getPos()).add(esnp);
-			}
-			
-			//Proteins
-			Map<String,Gene> geneMap = new HashMap<String, Gene>();
-			
-			for(Gene g : Read.parseGFF(refGFF))
-				geneMap.put(g.name, g);
-			
-			//Write
-			
-			snptabbw = new BufferedWriter(new FileWriter(outSNPtableWithSnpEffInfos));
-			
-			snptabbw.write("Position\tRef\tSNP");
-			for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-			{
-				snptabbw.write("\t"+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-			}
-			snptabbw.write("\tSNP Effect\tGene ID\tGene name\tGene function\told_AA/new_AA\tOld_codon/New_codon\tCodon_Num(CDS)\tCDS_size");
-			snptabbw.newLine();
-			
-			//char tmpchar;
-			Gene g;
-			String anno;
-			String length;
-			for(int pos : snpPositionList)
+			@Override
+			public void write() throws Exception
 			{
-				for(SNPeffSNP es : esnpsmap.get(pos))
-				{
-					g = geneMap.get(es.geneID);
-					
-					//anno/length
-					if(g!=null)
-					{
-						anno = g.anno;
-						length = Integer.toString(g.length());
-					}
-					else
-					{
-						anno = "";
-						length = "";
-					}
-					
-					
-					
-					snptabbw.write(pos+"\t"+refGenome.charAt(pos-1)+"\t"+es.to);
-					
-					for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-					{
-						snptabbw.write("\t");
-						tmpchar = snpColumns[pos-1][vcfIndex];
-						if(tmpchar==refGenome.charAt(pos-1))
-							snptabbw.write(".");
-						else
-						{
-							snptabbw.write(tmpchar);
-							
-							if(writeFreqsInStatTable && tmpchar!='N')
-							{
-								snptabbw.write(" ("+Math.round(snpFrequencies[pos-1][vcfIndex]*1000d)/10d+")");
-							}
-						}
-					}
-					
-					snptabbw.write("\t"+es.effect+"\t"+es.geneID+"\t"+es.geneName+"\t"+anno+"\t"+es.aaChange+"\t"+es.codonChange+"\t"+es.codonNum+"\t"+length);
-					
-					snptabbw.newLine();
-				}
+				tableWriter.write();
 			}
-			
-			snptabbw.close();
-		}
+		});
 		
-		//Write SNP table with SnpEffInfos with uncertainty calls
-		//Identical to previous code (3 differences)
-		if((new File(snpEffOutputFile)).exists())
+		//Write SNP multi fasta (with and without the reference genome)
+		outputs.submit("Writing SNP alignment (fasta):\n"+outSNPfasta+"\nWriting SNP alignment including reference genome (fasta):\n"+outSNPfastaWithRef, new OutputScheduler.Output()
 		{
-			System.out.println("Writing SNP table:\n"+outSNPtableWithUncertaintyCallsWithSnpEffInfos); // 1/3 differences
-			
-			
-			//SNPeff SNPs
-			List<SNPeffSNP> esnps = Read.readSNPeffSNPs(snpEffOutputFile);
-			
-			Map<Integer,List<SNPeffSNP>> esnpsmap = new HashMap<Integer, List<SNPeffSNP>>();
-			
-			for(SNPeffSNP esnp : esnps)
+			@Override
+			public void write() throws Exception
 			{
-				if(!esnpsmap.containsKey(esnp.getPos()))
-				{
-					esnpsmap.put(esnp.getPos(), new LinkedList<SNPeffSNP>());
-				}
-				
-				esnpsmap.get(esnp.getPos()).add(esnp);
+				resultWriter.writeSNPAlignments(outSNPfasta, outSNPfastaWithRef);
 			}
-			
-			//Proteins
-			Map<String,Gene> geneMap = new HashMap<String, Gene>();
-			
-			for(Gene g : Read.parseGFF(refGFF))
-				geneMap.put(g.name, g);
-			
-			//Write
-			
-			snptabbw = new BufferedWriter(new FileWriter(outSNPtableWithUncertaintyCallsWithSnpEffInfos)); // 2/3 differences
-			
-			snptabbw.write("Position\tRef\tSNP");
-			for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-			{
-				snptabbw.write("\t"+getSampleNameFromPath(args[vcfIndex+vcfArgumentsOffset]));
-			}
-			snptabbw.write("\tSNP Effect\tGene ID\tGene name\tGene function\told_AA/new_AA\tOld_codon/New_codon\tCodon_Num(CDS)\tCDS_size");
-			snptabbw.newLine();
-			
-			//char tmpchar;
-			Gene g;
-			String anno;
-			String length;
-			for(int pos : snpPositionList)
+		});
+		
+		//Write FULL multi fasta with reference genome 
+		//(when streaming or in two-pass mode it was already written while parsing)
+		if(!streaming && !twoPass)
+		{
+			outputs.submit("Writing full alignment including reference genome (fasta):\n"+outFullAlignmentFasta, new OutputScheduler.Output()
 			{
-				for(SNPeffSNP es : esnpsmap.get(pos))
+				@Override
+				public void write() throws Exception
 				{
-					g = geneMap.get(es.geneID);
-					
-					//anno/length
-					if(g!=null)
-					{
-						anno = g.anno;
-						length = Integer.toString(g.length());
-					}
-					else
-					{
-						anno = "";
-						length = "";
-					}
-					
-					
-					
-					snptabbw.write(pos+"\t"+refGenome.charAt(pos-1)+"\t"+es.to);
-					
-					for(int vcfIndex=0; vcfIndex<numVCFs; vcfIndex++)
-					{
-						snptabbw.write("\t");
-						tmpchar = uncertainSnpColumns[pos-1][vcfIndex]; // 3/3 differences
-						if(tmpchar==refGenome.charAt(pos-1))
-							snptabbw.write(".");
-						else
-						{
-							snptabbw.write(tmpchar);
-							
-							if(writeFreqsInStatTable && tmpchar!='N')
-							{
-								snptabbw.write(" ("+Math.round(snpFrequencies[pos-1][vcfIndex]*1000d)/10d+")");
-							}
-						}
-					}
-					
-					snptabbw.write("\t"+es.effect+"\t"+es.geneID+"\t"+es.geneName+"\t"+anno+"\t"+es.aaChange+"\t"+es.codonChange+"\t"+es.codonNum+"\t"+length);
-					
-					snptabbw.newLine();
+					resultWriter.writeFullAlignment(outFullAlignmentFasta, rowNames);
 				}
-			}
-			
-			snptabbw.close();
+			});
 		}
 		
+		outputs.finish();
+		
 		date = new Date();
 		infobw.write("Run finished: "+date.toGMTString()+"\n");
 		
 		infobw.write("\nList of VCF files:\n");
-		for(int vcfIndex =0; vcfIndex<numVCFs; vcfIndex++)
+		for(int fileIndex =0; fileIndex<numFiles; fileIndex++)
 		{
-			infobw.write(args[vcfIndex+vcfArgumentsOffset]+"\n");
+			infobw.write(args[fileIndex+vcfArgumentsOffset]+"\n");
 		}
 		
 		infobw.close();
@@ -928,139 +501,53 @@ public class MultiVCFAnalyzer {
 		System.out.println("All done! ("+Math.round((System.currentTimeMillis()-startTime)/60000d)+" minutes)");
 	}
 	
-	private static void excludePositionsFromSet(Set<Integer> positions, String posToExcludeFiles) throws Exception
+	/**
+	 * Waits for the tasks and rethrows the first failure (after stopping the pool).
+	 */
+	private static void waitFor(List<Future<?>> results, ExecutorService pool) throws Exception
 	{
-		String[] filenames = posToExcludeFiles.split(",");
-		
-		File excludefile = new File(filenames[0]);
-		
-		System.out.println("Excluding positions...");
-		
-		int count =0;
-		BufferedReader br;
-		
-		//exclude regions (like rep regions, certain genes, etc)
-		if(excludefile.exists())
+		try
 		{
-			
-			String[] cells;
-			int start;
-			int end;
-			
-			br = new BufferedReader(new FileReader(excludefile));
-			for(String line=br.readLine(); line!=null;line=br.readLine())
-			{
-				line = line.trim();
-				if(line.length()==0)
-					continue;
-				if(line.startsWith("#"))
-					continue;
-				
-				cells = line.split("[\\t]");
-				
-				// start = 3
-				start = Integer.parseInt(cells[3]);
-				
-				// end = 4
-				end = Integer.parseInt(cells[4]);
-				
-				for(int i=start;i<=end;i++)
-				{
-					if(positions.contains(i))
-					{
-						count++;
-						positions.remove(i);
-					}
-				}
-			}
-			
-			br.close();
-		
+			for(Future<?> result : results)
+				result.get();
 		}
-		
-		//exclude 1st and 2nd codon position
-		if(filenames.length>1)
+		catch(ExecutionException e)
 		{
-			excludefile = new File(filenames[1]);
-			
-			if(excludefile.exists())
-			{
-				List<Gene> cdss = Read.getCDSfromGFF(excludefile.getAbsolutePath());
-				
-				for(Gene g : cdss)
-				{
-					if(g.strand=='+')
-					{
-						for(int posGenome=g.start, posGene=1; posGenome<=g.end; posGenome++,posGene++)
-						{
-							if(posGene%3!=0)
-							{
-								count++;
-								positions.remove(posGenome);
-							}
-						}
-					}
-					else if(g.strand=='-')
-					{
-						for(int posGenome=g.end, posGene=1; posGenome>=g.start; posGenome--,posGene++)
-						{
-							if(posGene%3!=0)
-								positions.remove(posGenome);
-						}
-					}
-				}
-			}
+			pool.shutdownNow();
+			if(e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw (Exception)e.getCause();
 		}
-		
-		
-		
-		System.out.println(count+" SNP positions excluded.");
 	}
 	
-	private static Set<Integer> getPositionsToExclude(String posToExcludeFile) throws Exception
+	private static GenotypeMatrix createGenotypeMatrix(String storage, ReferenceGenome refGenome, int numVCFs, File mappedFile) throws Exception
 	{
-		File infile = new File(posToExcludeFile);
-		
-		Set<Integer> res = new HashSet<Integer>();
-		
-		if(!infile.exists())
-		{
-			System.err.println("No positions to exclude provided! All positions will be used!");
-			return res;
-		}
-		
-		
-		
-		String[] cells;
-		int start;
-		int end;
-		
-		BufferedReader br = new BufferedReader(new FileReader(infile));
-		for(String line=br.readLine(); line!=null;line=br.readLine())
+		if(storage.equalsIgnoreCase("packed"))
+			return new PackedGenotypeMatrix(refGenome, numVCFs);
+		if(storage.equalsIgnoreCase("sparse"))
+			return new SparseGenotypeMatrix(refGenome, numVCFs);
+		if(storage.equalsIgnoreCase("mapped"))
+			return new MappedGenotypeMatrix(refGenome, numVCFs, mappedFile);
+		
+		throw new Error("ERROR: Unknown genotype storage '"+storage+"'! Use 'packed', 'sparse' or 'mapped'.");
+	}
+	
+	/**
+	 * Removes the leading options (--name=value) from the program arguments.
+	 * 
+	 * @param args	the program arguments
+	 * @param options	map the options are put in (name to value)
+	 * @return	the remaining (positional) arguments
+	 */
+	public static String[] parseOptions(String[] args, Map<String,String> options)
+	{
+		int i;
+		for(i=0; i<args.length && args[i].startsWith("--") && args[i].contains("="); i++)
 		{
-			line = line.trim();
-			if(line.length()==0)
-				continue;
-			if(line.startsWith("#"))
-				continue;
-			
-			cells = line.split("[\\t]");
-			
-			// start = 3
-			start = Integer.parseInt(cells[3]);
-			
-			// end = 4
-			end = Integer.parseInt(cells[4]);
-			
-			for(int i=start;i<=end;i++)
-			{
-				res.add(i);
-			}
+			options.put(args[i].substring(2, args[i].indexOf('=')), args[i].substring(args[i].indexOf('=')+1));
 		}
 		
-		br.close();
-		
-		return res;
+		return Arrays.copyOfRange(args, i, args.length);
 	}
 	
 	public static boolean parseBoolean(String boo)
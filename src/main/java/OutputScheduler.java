@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes several output files at the same time on a bounded number of
+ * threads. Each output writes its own file.
+ *
+ */
+public class OutputScheduler
+{
+	/**
+	 * An output file.
+	 */
+	public interface Output
+	{
+		public void write() throws Exception;
+	}
+	
+	private final ExecutorService pool;
+	
+	private final List<Future<?>> results = new ArrayList<Future<?>>();
+	
+	/**
+	 * @param numThreads	the number of files written at the same time
+	 */
+	public OutputScheduler(int numThreads)
+	{
+		this.pool = Executors.newFixedThreadPool(numThreads);
+	}
+	
+	/**
+	 * Writes an output as soon as a thread is free.
+	 * 
+	 * @param message	printed when the output is started (or null)
+	 * @param output	the output
+	 */
+	public void submit(final String message, final Output output)
+	{
+		results.add(pool.submit(new Callable<Void>()
+		{
+			@Override
+			public Void call() throws Exception
+			{
+				if(message!=null)
+					System.out.println(message);
+				output.write();
+				return null;
+			}
+		}));
+	}
+	
+	/**
+	 * Waits until all outputs are written. A failing output does not stop
+	 * the other outputs.
+	 * 
+	 * @throws Exception	the first failure of an output
+	 */
+	public void finish() throws Exception
+	{
+		pool.shutdown();
+		
+		Throwable failure = null;
+		for(Future<?> result : results)
+		{
+			try
+			{
+				result.get();
+			}
+			catch(ExecutionException e)
+			{
+				if(failure==null)
+					failure = e.getCause();
+			}
+		}
+		
+		if(failure instanceof Error)
+			throw (Error)failure;
+		if(failure!=null)
+			throw (Exception)failure;
+	}
+}
@@ -0,0 +1,218 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores one base call per genome position and sample in 4 bits.
+ *
+ * The 15 characters that can be produced by the VCF parsing (A, C, G, T, N,
+ * the IUPAC ambiguity codes R, Y, K, M, S, W and the lower-case uncertain
+ * calls a, c, g, t) are stored directly. Any other character (e.g. unusual
+ * characters in the reference sequence) is stored with an escape code and
+ * kept in a side table (see {@link EscapedCalls}).
+ *
+ * Each sample has its own packed column, so a sample's calls can be written
+ * independently of all other samples.
+ *
+ */
+public class PackedGenotypeMatrix implements GenotypeMatrix
+{
+	private static final char[] ALPHABET = {'A','C','G','T','N','R','Y','K','M','S','W','a','c','g','t'};
+
+	static final int ESCAPE = 15;
+
+	private static final byte[] CODES = new byte[128];
+
+	private static final byte[] BYTES = new byte[ALPHABET.length];
+
+	static
+	{
+		for(int i=0; i<CODES.length; i++)
+			CODES[i] = ESCAPE;
+		for(int i=0; i<ALPHABET.length; i++)
+		{
+			CODES[ALPHABET[i]] = (byte)i;
+			BYTES[i] = (byte)ALPHABET[i];
+		}
+	}
+
+	private final int length;
+
+	private final byte[][] columns;
+
+	private final EscapedCalls exceptions;
+
+	/**
+	 * Creates a matrix for the given number of samples in which every
+	 * cell holds the reference base of its position.
+	 *
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples (columns)
+	 */
+	public PackedGenotypeMatrix(ReferenceGenome reference, int numSamples)
+	{
+		this.length = reference.length();
+		this.columns = new byte[numSamples][];
+
+		//pack the reference once and copy it into every column
+		Map<Integer,Character> templateExceptions = new HashMap<Integer, Character>();
+		byte[] template = pack(reference, templateExceptions);
+
+		for(int sample=0; sample<numSamples; sample++)
+			columns[sample] = template.clone();
+		this.exceptions = new EscapedCalls(templateExceptions, numSamples);
+	}
+
+	@Override
+	public char get(int pos, int sample)
+	{
+		int code = (columns[sample][pos>>>1]>>>((pos&1)<<2)) & 0xF;
+
+		if(code==ESCAPE)
+			return exceptions.get(pos, sample);
+
+		return decode(code);
+	}
+
+	@Override
+	public void set(int pos, int sample, char call)
+	{
+		byte[] column = columns[sample];
+		int shift = (pos&1)<<2;
+		int code = encode(call);
+
+		if(code==ESCAPE)
+			exceptions.put(pos, sample, call);
+		else if(((column[pos>>>1]>>>shift) & 0xF)==ESCAPE)
+			exceptions.remove(pos, sample);
+
+		column[pos>>>1] = (byte)((column[pos>>>1] & ~(0xF<<shift)) | (code<<shift));
+	}
+
+	@Override
+	public void getRow(int sample, int start, int end, byte[] dest)
+	{
+		byte[] column = columns[sample];
+		int code;
+		for(int pos=start; pos<end; pos++)
+		{
+			code = (column[pos>>>1]>>>((pos&1)<<2)) & 0xF;
+			dest[pos-start] = code==ESCAPE ? (byte)exceptions.get(pos, sample) : BYTES[code];
+		}
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public int numSamples()
+	{
+		return columns.length;
+	}
+
+	/**
+	 * Packs a sequence into 4-bit codes, two positions per byte.
+	 *
+	 * @param sequence	the sequence to pack
+	 * @param exceptions	map the characters stored with the escape code are put in
+	 * @return	the packed sequence
+	 */
+	static byte[] pack(ReferenceGenome sequence, Map<Integer,Character> exceptions)
+	{
+		byte[] packed = new byte[(sequence.length()+1)/2];
+
+		char c;
+		int code;
+		for(int pos=0; pos<sequence.length(); pos++)
+		{
+			c = sequence.charAt(pos);
+			code = encode(c);
+			if(code==ESCAPE)
+				exceptions.put(pos, c);
+			packed[pos>>>1] |= code<<((pos&1)<<2);
+		}
+
+		return packed;
+	}
+
+	static char decode(int code)
+	{
+		return ALPHABET[code];
+	}
+
+	/**
+	 * @return	the character of a code (not ESCAPE) as byte
+	 */
+	static byte decodeByte(int code)
+	{
+		return BYTES[code];
+	}
+
+	static int encode(char c)
+	{
+		if(c<CODES.length)
+			return CODES[c];
+		return ESCAPE;
+	}
+
+	/**
+	 * The characters stored with the escape code. The ones of the reference
+	 * are shared by all samples and never changed; a sample only gets its
+	 * own table once one of its calls needs the escape code.
+	 */
+	static class EscapedCalls
+	{
+		private final Map<Integer,Character> reference;
+
+		private final List<Map<Integer,Character>> samples;
+
+		/**
+		 * @param reference	the escaped characters of the reference
+		 * @param numSamples	the number of samples
+		 */
+		EscapedCalls(Map<Integer,Character> reference, int numSamples)
+		{
+			this.reference = Collections.unmodifiableMap(reference);
+			this.samples = new ArrayList<Map<Integer,Character>>(Collections.<Map<Integer,Character>>nCopies(numSamples, null));
+		}
+
+		/**
+		 * @return	the escaped call of the sample (or of the reference if the sample has none)
+		 */
+		char get(int pos, int sample)
+		{
+			Map<Integer,Character> calls = samples.get(sample);
+			Character call = calls==null ? null : calls.get(pos);
+			if(call==null)
+				call = reference.get(pos);
+			return call;
+		}
+
+		void put(int pos, int sample, char call)
+		{
+			Map<Integer,Character> calls = samples.get(sample);
+			if(calls==null)
+			{
+				calls = new HashMap<Integer, Character>();
+				samples.set(sample, calls);
+			}
+			calls.put(pos, call);
+		}
+
+		/**
+		 * Removes the escaped call of the sample when a call without escape
+		 * code replaces it.
+		 */
+		void remove(int pos, int sample)
+		{
+			Map<Integer,Character> calls = samples.get(sample);
+			if(calls!=null)
+				calls.remove(pos);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A set of genome positions backed by a bitset.
+ * 
+ * Holds positions from 0 up to (but excluding) the capacity given at
+ * construction. Positions outside of this range are never contained.
+ * 
+ * Positions can be added and removed by several threads at the same time
+ * without locking (compare-and-set on the words of the bitset).
+ *
+ */
+public class PositionSet
+{
+	private final int capacity;
+	
+	private final AtomicLongArray words;
+	
+	/**
+	 * @param capacity	the largest position that can be stored plus one
+	 */
+	public PositionSet(int capacity)
+	{
+		this.capacity = capacity;
+		this.words = new AtomicLongArray((capacity+63)>>>6);
+	}
+	
+	public void add(int pos)
+	{
+		or(pos>>>6, 1L<<pos);
+	}
+	
+	/**
+	 * Adds all positions from start to end (both inclusive). The range is
+	 * clipped to the capacity of the set.
+	 */
+	public void addRange(int start, int end)
+	{
+		start = Math.max(start, 0);
+		end = Math.min(end, capacity-1);
+		
+		if(start>end)
+			return;
+		
+		int startWord = start>>>6;
+		int endWord = end>>>6;
+		long startMask = -1L<<start;
+		long endMask = -1L>>>(63-(end&63));
+		
+		if(startWord==endWord)
+		{
+			or(startWord, startMask & endMask);
+			return;
+		}
+		
+		or(startWord, startMask);
+		for(int i=startWord+1; i<endWord; i++)
+			words.set(i, -1L);
+		or(endWord, endMask);
+	}
+	
+	public void remove(int pos)
+	{
+		if(pos<0 || pos>=capacity)
+			return;
+		
+		int i = pos>>>6;
+		long mask = 1L<<pos;
+		long word;
+		do
+		{
+			word = words.get(i);
+		}
+		while((word & mask)!=0 && !words.compareAndSet(i, word, word & ~mask));
+	}
+	
+	public boolean contains(int pos)
+	{
+		return pos>=0 && pos<capacity && (words.get(pos>>>6) & (1L<<pos))!=0;
+	}
+	
+	/**
+	 * @return	the number of positions in the set
+	 */
+	public int size()
+	{
+		int size = 0;
+		for(int i=0; i<words.length(); i++)
+			size += Long.bitCount(words.get(i));
+		return size;
+	}
+	
+	/**
+	 * @return	the positions in the set in ascending order
+	 */
+	public int[] toArray()
+	{
+		int[] res = new int[size()];
+		
+		int i = 0;
+		long word;
+		for(int w=0; w<words.length(); w++)
+		{
+			word = words.get(w);
+			while(word!=0 && i<res.length)
+			{
+				res[i++] = (w<<6)+Long.numberOfTrailingZeros(word);
+				word &= word-1;
+			}
+		}
+		
+		return res;
+	}
+	
+	private void or(int i, long mask)
+	{
+		long word;
+		do
+		{
+			word = words.get(i);
+		}
+		while((word & mask)!=mask && !words.compareAndSet(i, word, word | mask));
+	}
+}
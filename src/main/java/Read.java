@@ -2,10 +2,8 @@
 
 import java.io.BufferedReader;
 import java.io.FileReader;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 
@@ -153,237 +151,25 @@ public class Read
 		return genes;
 	}
 	
+	/**
+	 * @param filename	the GFF file
+	 * @return	the genes of the annotation with their descriptions
+	 * @throws Exception
+	 * @see GFFAnnotation
+	 */
 	public static List<Gene> parseGFF(String filename) throws Exception
 	{
-		List<Gene> res = new LinkedList<Gene>();
-		
-		try {
-		
-		Map<String,String> locusTag2DescMap = new HashMap<String, String>();
-		Map<String,String> parentId2DescMap = new HashMap<String, String>();
-		Map<String,String> position2DescMap = new HashMap<String, String>();
-		
-		BufferedReader r = new BufferedReader(new FileReader(filename));
-		
-		String line;
-		
-		String id;
-		String type;
-		int start;
-		int end;
-		char strand;
-		String desc;
-		String source;
-		String idAsParent;
-		
-		Map<String,String> attributes = new HashMap<String,String>();
-		String[] cells;
-		String[] attcells;
-		
-		for(line=r.readLine();line!=null;line=r.readLine())
-		{
-			line=line.trim();
-			if(line.length()==0)
-				continue;
-			if(line.charAt(0)=='#')
-				continue;
-			
-			cells = line.split("[\\t]");
-			
-			//if(!(cells[2].equalsIgnoreCase("CDS") || cells[2].equalsIgnoreCase("exon")))
-				//continue;
-			
-			//source = 0
-			source = cells[0];
-			
-			//type = 2
-			type = cells[2];
-			
-			// start = 3
-			start = Integer.parseInt(cells[3]);
-			
-			// end = 4
-			end = Integer.parseInt(cells[4]);
-			
-			// strand = 6
-			strand = cells[6].charAt(0);
-			
-			attributes.clear();
-			
-			if(cells.length>=9)
-				for(String s : cells[8].split(";"))
-				{
-					attcells = s.split("=");
-					if(attcells.length==2)
-						attributes.put(attcells[0].trim(), attcells[1].trim());
-					else if(attcells.length==1)
-						attributes.put(attcells[0].trim(), "");					
-				}
-			
-			if(attributes.containsKey("locus_tag"))
-				id=attributes.get("locus_tag");
-			else if(attributes.containsKey("ID"))
-				id=attributes.get("ID");
-			else
-				id="locus"+start+"-"+end;
-			
-			if(attributes.containsKey("ID"))
-				idAsParent = attributes.get("ID");
-			else
-				idAsParent = null;
-			
-			if(attributes.containsKey("product"))
-				desc=attributes.get("product");
-			else
-				desc="";
-			
-			
-			//locus tag to desc mapping
-			if(attributes.containsKey("locus_tag"))
-			{
-				if(attributes.containsKey("product"))
-					locusTag2DescMap.put(attributes.get("locus_tag"), attributes.get("product"));
-					
-				if(attributes.containsKey("pseudo"))
-					locusTag2DescMap.put(attributes.get("locus_tag"), "pseudo");
-			}
-			
-			//parent id to desc mapping
-			if(attributes.containsKey("Parent"))
-			{
-				if(attributes.containsKey("product"))
-					parentId2DescMap.put(attributes.get("Parent"), attributes.get("product"));
-				
-				if(attributes.containsKey("pseudo"))
-					parentId2DescMap.put(attributes.get("Parent"), "pseudo");
-			}
-			
-			//position to desc map
-			if(attributes.containsKey("product"))
-				position2DescMap.put(start+"_"+end+"_"+strand, attributes.get("product"));
-			
-			if(attributes.containsKey("pseudo"))
-				position2DescMap.put(start+"_"+end+"_"+strand, "pseudo");
-			
-			//create gene
-			if(type.equalsIgnoreCase("gene"))
-				res.add(new Gene(id,desc,start,end,strand,idAsParent));
-		}
-		r.close();
-		
-		//set descriptions
-		for(Gene g:res)
-			if(locusTag2DescMap.containsKey(g.name))
-				g.anno = locusTag2DescMap.get(g.name);
-			else if(parentId2DescMap.containsKey(g.idAsParent))
-				g.anno = parentId2DescMap.get(g.idAsParent);
-			else if(position2DescMap.containsKey(g.start+"_"+g.end+"_"+g.strand))
-				g.anno = position2DescMap.get(g.start+"_"+g.end+"_"+g.strand);
-		
-		}catch(Throwable e)
-		{
-			throw new Exception("A problem occured while parsing the GFF annotation:\n"+filename+"\n"+e.toString(),e);
-		}
-		
-		return res;
+		return new LinkedList<Gene>(GFFAnnotation.load(filename).getGenes());
 	}
 	
+	/**
+	 * @param filename	the GFF file
+	 * @return	the CDS of the annotation
+	 * @throws Exception
+	 * @see GFFAnnotation
+	 */
 	public static List<Gene> getCDSfromGFF(String filename) throws Exception
 	{
-		List<Gene> res = new LinkedList<Gene>();
-		
-		try {
-		
-		
-		BufferedReader r = new BufferedReader(new FileReader(filename));
-		
-		String line;
-		
-		String id;
-		String type;
-		int start;
-		int end;
-		char strand;
-		String desc;
-		String source;
-		String idAsParent;
-		
-		Map<String,String> attributes = new HashMap<String,String>();
-		String[] cells;
-		String[] attcells;
-		
-		for(line=r.readLine();line!=null;line=r.readLine())
-		{
-			line=line.trim();
-			if(line.length()==0)
-				continue;
-			if(line.charAt(0)=='#')
-				continue;
-			
-			cells = line.split("[\\t]");
-			
-			//if(!(cells[2].equalsIgnoreCase("CDS") || cells[2].equalsIgnoreCase("exon")))
-				//continue;
-			
-			//source = 0
-			source = cells[0];
-			
-			//type = 2
-			type = cells[2];
-			
-			// start = 3
-			start = Integer.parseInt(cells[3]);
-			
-			// end = 4
-			end = Integer.parseInt(cells[4]);
-			
-			// strand = 6
-			strand = cells[6].charAt(0);
-			
-			attributes.clear();
-			
-			if(cells.length>=9)
-				for(String s : cells[8].split(";"))
-				{
-					attcells = s.split("=");
-					if(attcells.length==2)
-						attributes.put(attcells[0].trim(), attcells[1].trim());
-					else if(attcells.length==1)
-						attributes.put(attcells[0].trim(), "");					
-				}
-			
-			if(attributes.containsKey("locus_tag"))
-				id=attributes.get("locus_tag");
-			else if(attributes.containsKey("ID"))
-				id=attributes.get("ID");
-			else
-				id="locus"+start+"-"+end;
-			
-			if(attributes.containsKey("ID"))
-				idAsParent = attributes.get("ID");
-			else
-				idAsParent = null;
-			
-			if(attributes.containsKey("product"))
-				desc=attributes.get("product");
-			else
-				desc="";
-			
-			
-			
-			//create gene
-			if(type.equalsIgnoreCase("CDS"))
-				res.add(new Gene(id,desc,start,end,strand,idAsParent));
-		}
-		r.close();
-		
-		
-		
-		}catch(Throwable e)
-		{
-			throw new Exception("A problem occured while parsing the GFF annotation:\n"+filename+"\n"+e.toString(),e);
-		}
-		
-		return res;
+		return new LinkedList<Gene>(GFFAnnotation.load(filename).getCDSs());
 	}
 }
@@ -0,0 +1,85 @@
+/**
+ * The reference genome the VCF files were generated against.
+ * 
+ * Holds the names and lengths of all contigs of the reference FASTA file
+ * and the sequence of the first contig, which is the one the
+ * analysis is performed on.
+ *
+ */
+public class ReferenceGenome
+{
+	private final String name;
+	
+	private final String[] contigNames;
+	
+	private final int[] contigLengths;
+	
+	private final byte[] sequence;
+	
+	/**
+	 * @param name	complete FASTA header of the first contig (without '&gt;')
+	 * @param contigNames	names (IDs) of all contigs in file order
+	 * @param contigLengths	lengths of all contigs in file order
+	 * @param sequence	sequence of the first contig
+	 */
+	public ReferenceGenome(String name, String[] contigNames, int[] contigLengths, byte[] sequence)
+	{
+		this.name = name;
+		this.contigNames = contigNames;
+		this.contigLengths = contigLengths;
+		this.sequence = sequence;
+	}
+	
+	/**
+	 * @return	the name (complete FASTA header) of the analysed (first) contig
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * @return	the length of the analysed (first) contig
+	 */
+	public int length()
+	{
+		return sequence.length;
+	}
+	
+	/**
+	 * @param pos	0-based position
+	 * @return	the base at the given position
+	 */
+	public char charAt(int pos)
+	{
+		return (char)(sequence[pos] & 0xFF);
+	}
+	
+	/**
+	 * Copies the bases of a range of positions.
+	 * 
+	 * @param start	0-based position of the first base
+	 * @param end	0-based position after the last base
+	 * @param dest	the array the bases are copied to
+	 * @param offset	the index in dest of the first base
+	 */
+	public void copy(int start, int end, byte[] dest, int offset)
+	{
+		System.arraycopy(sequence, start, dest, offset, end-start);
+	}
+	
+	public int numContigs()
+	{
+		return contigNames.length;
+	}
+	
+	public String getContigName(int contig)
+	{
+		return contigNames[contig];
+	}
+	
+	public int getContigLength(int contig)
+	{
+		return contigLengths[contig];
+	}
+}
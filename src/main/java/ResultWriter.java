@@ -0,0 +1,84 @@
+import java.io.File;
+import java.util.List;
+
+/**
+ * Writes the alignments from the finished genotype matrices. The tables
+ * are written by the {@link SNPTableWriter}.
+ * 
+ * The writers only read the matrices, so the files can be written at the
+ * same time (see {@link OutputScheduler}).
+ *
+ */
+public class ResultWriter
+{
+	private final ReferenceGenome refGenome;
+	
+	private final List<String> sampleNames;
+	
+	private final int[] snpPositionList;
+	
+	private final GenotypeMatrix snpColumns;
+	
+	/**
+	 * @param refGenome	the reference genome
+	 * @param sampleNames	the names of all samples
+	 * @param snpPositionList	the sorted 1-based SNP positions
+	 * @param snpColumns	the base calls
+	 */
+	public ResultWriter(ReferenceGenome refGenome, List<String> sampleNames, int[] snpPositionList, GenotypeMatrix snpColumns)
+	{
+		this.refGenome = refGenome;
+		this.sampleNames = sampleNames;
+		this.snpPositionList = snpPositionList;
+		this.snpColumns = snpColumns;
+	}
+	
+	/**
+	 * Writes the SNP alignment with and without the reference genome.
+	 * 
+	 * @param outSNPfasta	the file of the alignment without the reference
+	 * @param outSNPfastaWithRef	the file of the alignment with the reference
+	 * @throws Exception
+	 */
+	public void writeSNPAlignments(String outSNPfasta, String outSNPfastaWithRef) throws Exception
+	{
+		FASTAWriter snpFasta = new FASTAWriter(outSNPfasta);
+		FASTAWriter snpFastaWithRef = new FASTAWriter(outSNPfastaWithRef);
+		
+		byte[] snpRow = new byte[snpPositionList.length];
+		for(int i=0; i<snpPositionList.length; i++)
+			snpRow[i] = (byte)refGenome.charAt(snpPositionList[i]-1);
+		
+		snpFastaWithRef.write("Reference_"+refGenome.getName(), snpRow, 0, snpRow.length);
+		
+		for(int vcfIndex=0; vcfIndex<sampleNames.size(); vcfIndex++)
+		{
+			for(int i=0; i<snpPositionList.length; i++)
+				snpRow[i] = (byte)snpColumns.get(snpPositionList[i]-1, vcfIndex);
+			
+			snpFasta.write(sampleNames.get(vcfIndex), snpRow, 0, snpRow.length);
+			snpFastaWithRef.write(sampleNames.get(vcfIndex), snpRow, 0, snpRow.length);
+		}
+		
+		snpFasta.close();
+		snpFastaWithRef.close();
+	}
+	
+	/**
+	 * Writes the full alignment with the reference genome.
+	 * 
+	 * @param outFullAlignmentFasta	the file
+	 * @param rowNames	the names of the reference and all samples
+	 * @throws Exception
+	 */
+	public void writeFullAlignment(String outFullAlignmentFasta, String[] rowNames) throws Exception
+	{
+		FullAlignmentWriter alignment = new FullAlignmentWriter(new File(outFullAlignmentFasta), rowNames, refGenome.length());
+		
+		alignment.writeReference(0, refGenome);
+		for(int vcfIndex=0; vcfIndex<sampleNames.size(); vcfIndex++)
+			alignment.writeRow(vcfIndex+1, snpColumns, vcfIndex);
+		
+		alignment.close();
+	}
+}
@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * The base calls and allele frequencies of all samples at the SNP
+ * positions only.
+ * 
+ * The positions are either known in advance (two-pass mode) or added in
+ * ascending order from a {@link GenotypeWindow} (streaming mode). The cells
+ * are stored position by position (all samples of a position next to each
+ * other), which is the order the SNP tables are written in. The
+ * {@link #calls()}, {@link #uncertainCalls()} and {@link #frequencies()}
+ * views hold the reference base (and a frequency of 0) at all other
+ * positions. Values set at other positions are dropped.
+ *
+ */
+public class SNPStore
+{
+	private static final int INITIAL_CAPACITY = 1024;
+	
+	private final ReferenceGenome reference;
+	
+	private final int numSamples;
+	
+	private int[] positions = new int[INITIAL_CAPACITY];
+	
+	private byte[] calls;
+	
+	private byte[] uncertainCalls;
+	
+	private short[] perMille;
+	
+	private int size = 0;
+	
+	/**
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples
+	 */
+	public SNPStore(ReferenceGenome reference, int numSamples)
+	{
+		this.reference = reference;
+		this.numSamples = numSamples;
+		this.calls = new byte[INITIAL_CAPACITY*numSamples];
+		this.uncertainCalls = new byte[INITIAL_CAPACITY*numSamples];
+		this.perMille = new short[INITIAL_CAPACITY*numSamples];
+	}
+	
+	/**
+	 * Creates a store for the given positions in which every cell holds the
+	 * reference base of its position.
+	 * 
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples
+	 * @param positions	the sorted 0-based positions
+	 */
+	public SNPStore(ReferenceGenome reference, int numSamples, int[] positions)
+	{
+		this.reference = reference;
+		this.numSamples = numSamples;
+		this.positions = positions;
+		this.size = positions.length;
+		this.calls = new byte[size*numSamples];
+		this.uncertainCalls = new byte[size*numSamples];
+		this.perMille = new short[size*numSamples];
+		
+		byte base;
+		for(int i=0; i<size; i++)
+		{
+			base = (byte)reference.charAt(positions[i]);
+			Arrays.fill(calls, i*numSamples, (i+1)*numSamples, base);
+			Arrays.fill(uncertainCalls, i*numSamples, (i+1)*numSamples, base);
+		}
+	}
+	
+	/**
+	 * Adds the cells of all samples at a position. The position must be
+	 * larger than all positions added before.
+	 * 
+	 * @param pos	0-based position
+	 * @param window	the window holding the position
+	 */
+	public void add(int pos, GenotypeWindow window)
+	{
+		if(size==positions.length)
+		{
+			int capacity = size+(size>>1)+1;
+			positions = Arrays.copyOf(positions, capacity);
+			calls = Arrays.copyOf(calls, capacity*numSamples);
+			uncertainCalls = Arrays.copyOf(uncertainCalls, capacity*numSamples);
+			perMille = Arrays.copyOf(perMille, capacity*numSamples);
+		}
+		
+		int offset = size*numSamples;
+		for(int sample=0; sample<numSamples; sample++)
+		{
+			calls[offset+sample] = (byte)window.getCall(pos, sample);
+			uncertainCalls[offset+sample] = (byte)window.getUncertainCall(pos, sample);
+			perMille[offset+sample] = window.getPerMille(pos, sample);
+		}
+		positions[size++] = pos;
+	}
+	
+	/**
+	 * @return	the index of the position or -1 if it is not stored
+	 */
+	private int indexOf(int pos)
+	{
+		int index = Arrays.binarySearch(positions, 0, size, pos);
+		return index<0 ? -1 : index;
+	}
+	
+	/**
+	 * @return	the base calls at the SNP positions
+	 */
+	public GenotypeMatrix calls()
+	{
+		return new Matrix(false);
+	}
+	
+	/**
+	 * @return	the base calls (with uncertainty calls) at the SNP positions
+	 */
+	public GenotypeMatrix uncertainCalls()
+	{
+		return new Matrix(true);
+	}
+	
+	/**
+	 * @return	the allele frequencies at the SNP positions
+	 */
+	public AlleleFrequencies frequencies()
+	{
+		return new AlleleFrequencies()
+		{
+			@Override
+			public double get(int pos, int sample)
+			{
+				int index = indexOf(pos);
+				if(index<0)
+					return 0;
+				return perMille[index*numSamples+sample]/1000d;
+			}
+			
+			@Override
+			public void set(int pos, int sample, double freq)
+			{
+				int index = indexOf(pos);
+				if(index>=0)
+					perMille[index*numSamples+sample] = (short)Math.round(freq*1000d);
+			}
+		};
+	}
+	
+	private class Matrix implements GenotypeMatrix
+	{
+		private final boolean uncertain;
+		
+		Matrix(boolean uncertain)
+		{
+			this.uncertain = uncertain;
+		}
+		
+		@Override
+		public char get(int pos, int sample)
+		{
+			int index = indexOf(pos);
+			if(index<0)
+				return reference.charAt(pos);
+			
+			byte[] cells = uncertain ? uncertainCalls : calls;
+			return (char)(cells[index*numSamples+sample] & 0xFF);
+		}
+		
+		@Override
+		public void set(int pos, int sample, char call)
+		{
+			int index = indexOf(pos);
+			if(index>=0)
+				(uncertain ? uncertainCalls : calls)[index*numSamples+sample] = (byte)call;
+		}
+		
+		@Override
+		public void getRow(int sample, int start, int end, byte[] dest)
+		{
+			reference.copy(start, end, dest, 0);
+			
+			int index = Arrays.binarySearch(positions, 0, size, start);
+			if(index<0)
+				index = -(index+1);
+			
+			byte[] cells = uncertain ? uncertainCalls : calls;
+			for(; index<size && positions[index]<end; index++)
+				dest[positions[index]-start] = cells[index*numSamples+sample];
+		}
+		
+		@Override
+		public int length()
+		{
+			return reference.length();
+		}
+		
+		@Override
+		public int numSamples()
+		{
+			return numSamples;
+		}
+	}
+}
@@ -0,0 +1,611 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes all tables over the SNP positions in a single pass.
+ * 
+ * The SNP positions are walked once. For each position the calls of all
+ * samples are read into a {@link Row}, which is passed to all tables
+ * (sinks). The text of the calls (reference check and frequency) is
+ * formatted once per row and shared by the tables.
+ * 
+ * If the SnpEff results cannot be used, the tables with SnpEff infos are
+ * removed and the other tables are still written before the error is
+ * thrown. Any other failure stops all tables.
+ *
+ */
+public class SNPTableWriter
+{
+	/**
+	 * A table written position by position.
+	 */
+	public interface Sink
+	{
+		/**
+		 * Writes the lines of a SNP position.
+		 */
+		public void row(Row row) throws Exception;
+		
+		public void close() throws Exception;
+	}
+	
+	private static final String SNPEFF_COLUMNS = "\tSNP Effect\tGene ID\tGene name\tGene function\told_AA/new_AA\tOld_codon/New_codon\tCodon_Num(CDS)\tCDS_size";
+	
+	private final ReferenceGenome refGenome;
+	
+	private final List<String> sampleNames;
+	
+	private final int[] snpPositionList;
+	
+	private final GenotypeMatrix snpColumns;
+	
+	private final GenotypeMatrix uncertainSnpColumns;
+	
+	private final AlleleFrequencies snpFrequencies;
+	
+	private final List<Sink> sinks = new ArrayList<Sink>();
+	
+	//SnpEff annotations (read when the tables are written)
+	private String snpEffOutputFile;
+	private String refGFF;
+	private SnpEffTable snpEffTable;
+	
+	/**
+	 * @param refGenome	the reference genome
+	 * @param sampleNames	the names of all samples
+	 * @param snpPositionList	the sorted 1-based SNP positions
+	 * @param snpColumns	the base calls
+	 * @param uncertainSnpColumns	the base calls with uncertainty calls
+	 * @param snpFrequencies	the allele frequencies (or null if they are not written)
+	 */
+	public SNPTableWriter(ReferenceGenome refGenome, List<String> sampleNames, int[] snpPositionList, GenotypeMatrix snpColumns, GenotypeMatrix uncertainSnpColumns, AlleleFrequencies snpFrequencies)
+	{
+		this.refGenome = refGenome;
+		this.sampleNames = sampleNames;
+		this.snpPositionList = snpPositionList;
+		this.snpColumns = snpColumns;
+		this.uncertainSnpColumns = uncertainSnpColumns;
+		this.snpFrequencies = snpFrequencies;
+	}
+	
+	/**
+	 * Adds a table.
+	 */
+	public void add(Sink sink)
+	{
+		sinks.add(sink);
+	}
+	
+	/**
+	 * Sets the SnpEff result the annotated SNP tables are written with. It is
+	 * read once for all of these tables when the tables are written.
+	 * 
+	 * @param snpEffOutputFile	the SnpEff result file
+	 * @param refGFF	the gene annotation (gff)
+	 */
+	public void setSnpEffInfos(String snpEffOutputFile, String refGFF)
+	{
+		this.snpEffOutputFile = snpEffOutputFile;
+		this.refGFF = refGFF;
+	}
+	
+	/**
+	 * Walks the SNP positions once and writes all tables.
+	 * 
+	 * @throws Exception
+	 */
+	public void write() throws Exception
+	{
+		List<Sink> active = new ArrayList<Sink>(sinks);
+		
+		//the tables without SnpEff infos do not depend on the SnpEff results
+		Throwable snpEffFailure = null;
+		if(snpEffOutputFile!=null)
+		{
+			try
+			{
+				readSnpEffInfos();
+				
+				int missing = snpEffTable.findMissing(snpPositionList);
+				if(missing!=0)
+					throw new Error("ERROR: No entry for SNP position "+missing+" in the SnpEff result file "+snpEffOutputFile);
+			}
+			catch(Exception | Error e)
+			{
+				snpEffFailure = e;
+				
+				for(Sink sink : sinks)
+				{
+					if(sink instanceof CallTable && ((CallTable)sink).snpEffInfos)
+					{
+						((CallTable)sink).discard();
+						active.remove(sink);
+					}
+				}
+			}
+		}
+		
+		Row row = new Row();
+		try
+		{
+			for(int pos : snpPositionList)
+			{
+				row.load(pos);
+				
+				for(Sink sink : active)
+					sink.row(row);
+			}
+		}
+		catch(Exception | Error e)
+		{
+			//keep what was written
+			for(Sink sink : active)
+			{
+				try
+				{
+					sink.close();
+				}
+				catch(Exception ce)
+				{
+					e.addSuppressed(ce);
+				}
+			}
+			throw e;
+		}
+		
+		for(Sink sink : active)
+			sink.close();
+		
+		if(snpEffFailure instanceof Error)
+			throw (Error)snpEffFailure;
+		if(snpEffFailure!=null)
+			throw (Exception)snpEffFailure;
+	}
+	
+	private void readSnpEffInfos() throws Exception
+	{
+		//SNPeff SNPs
+		snpEffTable = new SnpEffTable(snpEffOutputFile);
+		
+		//Proteins
+		Map<String,Gene> geneMap = new HashMap<String, Gene>();
+		
+		for(Gene g : GFFAnnotation.load(refGFF).getGenes())
+			geneMap.put(g.name, g);
+		
+		snpEffTable.setGenes(geneMap);
+	}
+	
+	/**
+	 * The calls of all samples at a SNP position. The texts of the calls
+	 * and the genotype encodings are computed when they are first needed.
+	 */
+	public class Row
+	{
+		/** the 1-based position */
+		int pos;
+		
+		/** the reference base */
+		char ref;
+		
+		final char[] calls = new char[sampleNames.size()];
+		
+		private final char[] uncertainCalls = new char[sampleNames.size()];
+		private boolean uncertainLoaded;
+		
+		private final String[] frequencies = new String[sampleNames.size()];
+		
+		private String cells;
+		private String uncertainCells;
+		
+		private final byte[] encodings = new byte[sampleNames.size()];
+		private boolean encoded;
+		
+		//the SnpEff entries of the position (joined by walking both in order)
+		private int snpEffFirst;
+		private int snpEffEnd = -1;
+		private Error snpEffMissing;
+		private String[] snpEffPrefixes = new String[4];
+		private String[] snpEffSuffixes = new String[4];
+		
+		void load(int pos)
+		{
+			this.pos = pos;
+			this.ref = refGenome.charAt(pos-1);
+			
+			for(int vcfIndex=0; vcfIndex<calls.length; vcfIndex++)
+				calls[vcfIndex] = snpColumns.get(pos-1, vcfIndex);
+			
+			uncertainLoaded = false;
+			Arrays.fill(frequencies, null);
+			cells = null;
+			uncertainCells = null;
+			encoded = false;
+			snpEffEnd = -1;
+			snpEffMissing = null;
+		}
+		
+		/**
+		 * Finds the SnpEff entries of the position and formats the columns
+		 * before and after the calls.
+		 */
+		private void joinSnpEff()
+		{
+			//every annotated table gets the same error
+			if(snpEffMissing!=null)
+				throw snpEffMissing;
+			if(snpEffEnd>=0)
+				return;
+			
+			int first = snpEffTable.seek(pos);
+			int end = snpEffTable.end(first);
+			if(first==end || snpEffTable.getPos(first)!=pos)
+			{
+				snpEffMissing = new Error("ERROR: No entry for SNP position "+pos+" in the SnpEff result file "+snpEffOutputFile);
+				throw snpEffMissing;
+			}
+			
+			int count = end-first;
+			if(snpEffPrefixes.length<count)
+			{
+				snpEffPrefixes = new String[count];
+				snpEffSuffixes = new String[count];
+			}
+			
+			Gene g;
+			String anno;
+			String length;
+			int index;
+			for(int i=0; i<count; i++)
+			{
+				index = first+i;
+				g = snpEffTable.getGene(index);
+				
+				//anno/length
+				if(g!=null)
+				{
+					anno = g.anno;
+					length = Integer.toString(g.length());
+				}
+				else
+				{
+					anno = "";
+					length = "";
+				}
+				
+				snpEffPrefixes[i] = pos+"\t"+ref+"\t"+snpEffTable.getTo(index);
+				snpEffSuffixes[i] = "\t"+snpEffTable.getEffect(index)+"\t"+snpEffTable.getGeneID(index)+"\t"+snpEffTable.getGeneName(index)+"\t"+anno+"\t"+snpEffTable.getAaChange(index)+"\t"+snpEffTable.getCodonChange(index)+"\t"+snpEffTable.getCodonNum(index)+"\t"+length;
+			}
+			
+			snpEffFirst = first;
+			snpEffEnd = end;
+		}
+		
+		/**
+		 * @return	the number of SnpEff entries of the position
+		 */
+		int snpEffCount()
+		{
+			joinSnpEff();
+			return snpEffEnd-snpEffFirst;
+		}
+		
+		/**
+		 * @return	the columns of a SnpEff entry before the calls (position, reference, SNP)
+		 */
+		String snpEffPrefix(int i)
+		{
+			joinSnpEff();
+			return snpEffPrefixes[i];
+		}
+		
+		/**
+		 * @return	the columns of a SnpEff entry after the calls (effect, gene, ...)
+		 */
+		String snpEffSuffix(int i)
+		{
+			joinSnpEff();
+			return snpEffSuffixes[i];
+		}
+		
+		/**
+		 * @param uncertain	true for the calls with uncertainty calls
+		 * @return	the columns of all samples of a SNP table (each starting with a tab)
+		 */
+		String cells(boolean uncertain)
+		{
+			if(uncertain)
+			{
+				if(uncertainCells==null)
+				{
+					if(!uncertainLoaded)
+					{
+						for(int vcfIndex=0; vcfIndex<uncertainCalls.length; vcfIndex++)
+							uncertainCalls[vcfIndex] = uncertainSnpColumns.get(pos-1, vcfIndex);
+						uncertainLoaded = true;
+					}
+					uncertainCells = format(uncertainCalls);
+				}
+				return uncertainCells;
+			}
+			
+			if(cells==null)
+				cells = format(calls);
+			return cells;
+		}
+		
+		private String format(char[] columns)
+		{
+			StringBuilder line = new StringBuilder(columns.length*2);
+			
+			char tmpchar;
+			for(int vcfIndex=0; vcfIndex<columns.length; vcfIndex++)
+			{
+				line.append('\t');
+				tmpchar = columns[vcfIndex];
+				if(tmpchar==ref)
+					line.append('.');
+				else
+				{
+					line.append(tmpchar);
+					
+					if(snpFrequencies!=null && tmpchar!='N')
+					{
+						line.append(frequency(vcfIndex));
+					}
+				}
+			}
+			
+			return line.toString();
+		}
+		
+		private String frequency(int vcfIndex)
+		{
+			if(frequencies[vcfIndex]==null)
+				frequencies[vcfIndex] = " ("+Math.round(snpFrequencies.get(pos-1, vcfIndex)*1000d)/10d+")";
+			return frequencies[vcfIndex];
+		}
+		
+		/**
+		 * @return	the genotype encoding of the call of a sample
+		 */
+		int encoding(int vcfIndex)
+		{
+			if(!encoded)
+			{
+				for(int i=0; i<calls.length; i++)
+					encodings[i] = (byte)MultiVCFAnalyzer.getGenotypeEncoding(calls[i]);
+				encoded = true;
+			}
+			return encodings[vcfIndex];
+		}
+	}
+	
+	/**
+	 * Creates the SNP table.
+	 * 
+	 * @param outSNPtable	the file
+	 * @param uncertain	true to write the calls with uncertainty calls
+	 * @param snpEffInfos	true to write the SnpEff infos (see {@link #setSnpEffInfos(String, String)})
+	 * @return	the table
+	 * @throws Exception
+	 */
+	public Sink callTable(String outSNPtable, boolean uncertain, boolean snpEffInfos) throws Exception
+	{
+		return new CallTable(outSNPtable, uncertain, snpEffInfos);
+	}
+	
+	/**
+	 * Creates the table of genotypes for STRUCTURE.
+	 * 
+	 * @param outGenoTypeTable4Structure	the file
+	 * @param missingDataPos	the positions that are left out (or null)
+	 * @return	the table
+	 */
+	public Sink structureTable(String outGenoTypeTable4Structure, PositionSet missingDataPos)
+	{
+		return new StructureTable(outGenoTypeTable4Structure, missingDataPos);
+	}
+	
+	/**
+	 * Creates the SNP table to be used as input for SnpEff.
+	 * 
+	 * @param outSNPtable4SnpEff	the file
+	 * @return	the table
+	 * @throws Exception
+	 */
+	public Sink snpEffInput(String outSNPtable4SnpEff) throws Exception
+	{
+		return new SnpEffInput(outSNPtable4SnpEff);
+	}
+	
+	private class CallTable implements Sink
+	{
+		private final String outSNPtable;
+		
+		private final BufferedWriter snptabbw;
+		
+		private final boolean uncertain;
+		
+		final boolean snpEffInfos;
+		
+		CallTable(String outSNPtable, boolean uncertain, boolean snpEffInfos) throws Exception
+		{
+			this.outSNPtable = outSNPtable;
+			this.snptabbw = new BufferedWriter(new FileWriter(outSNPtable));
+			this.uncertain = uncertain;
+			this.snpEffInfos = snpEffInfos;
+			
+			snptabbw.write(snpEffInfos ? "Position\tRef\tSNP" : "Position\tRef");
+			for(int vcfIndex=0; vcfIndex<sampleNames.size(); vcfIndex++)
+			{
+				snptabbw.write("\t"+sampleNames.get(vcfIndex));
+			}
+			if(snpEffInfos)
+				snptabbw.write(SNPEFF_COLUMNS);
+			snptabbw.newLine();
+		}
+		
+		@Override
+		public void row(Row row) throws Exception
+		{
+			if(!snpEffInfos)
+			{
+				snptabbw.write(row.pos+"\t"+row.ref);
+				snptabbw.write(row.cells(uncertain));
+				snptabbw.newLine();
+				return;
+			}
+			
+			for(int i=0; i<row.snpEffCount(); i++)
+			{
+				snptabbw.write(row.snpEffPrefix(i));
+				snptabbw.write(row.cells(uncertain));
+				snptabbw.write(row.snpEffSuffix(i));
+				snptabbw.newLine();
+			}
+		}
+		
+		@Override
+		public void close() throws Exception
+		{
+			snptabbw.close();
+		}
+		
+		/**
+		 * Closes the table before any position is written and removes its file.
+		 */
+		void discard()
+		{
+			try
+			{
+				snptabbw.close();
+			}
+			catch(Exception e)
+			{
+				//the file is removed anyway
+			}
+			
+			if(new File(outSNPtable).delete())
+				System.err.println("Removed "+outSNPtable+" (no SnpEff infos)");
+		}
+	}
+	
+	/**
+	 * The samples are the rows of this table, so the encodings are kept
+	 * until the table is closed.
+	 */
+	private class StructureTable implements Sink
+	{
+		private final String outGenoTypeTable4Structure;
+		
+		private final PositionSet missingDataPos;
+		
+		private int[] positions = new int[1024];
+		
+		private byte[][] encodings = new byte[sampleNames.size()][1024];
+		
+		private int size = 0;
+		
+		StructureTable(String outGenoTypeTable4Structure, PositionSet missingDataPos)
+		{
+			this.outGenoTypeTable4Structure = outGenoTypeTable4Structure;
+			this.missingDataPos = missingDataPos;
+		}
+		
+		@Override
+		public void row(Row row) throws Exception
+		{
+			if(missingDataPos!=null && missingDataPos.contains(row.pos-1))
+				return;
+			
+			if(size==positions.length)
+			{
+				int capacity = size+(size>>1)+1;
+				positions = Arrays.copyOf(positions, capacity);
+				for(int vcfIndex=0; vcfIndex<encodings.length; vcfIndex++)
+					encodings[vcfIndex] = Arrays.copyOf(encodings[vcfIndex], capacity);
+			}
+			
+			positions[size] = row.pos;
+			for(int vcfIndex=0; vcfIndex<encodings.length; vcfIndex++)
+				encodings[vcfIndex][size] = (byte)row.encoding(vcfIndex);
+			size++;
+		}
+		
+		@Override
+		public void close() throws Exception
+		{
+			BufferedWriter bw = new BufferedWriter(new FileWriter(outGenoTypeTable4Structure));
+			
+			//first row for linked loci
+			bw.append("-1");
+			for(int i=1; i<size; i++)
+				bw.append("\t"+(positions[i]-positions[i-1]));
+			
+			for(int vcfIndex=0; vcfIndex<encodings.length; vcfIndex++)
+			{
+				bw.newLine();
+				bw.append(sampleNames.get(vcfIndex));
+				for(int i=0; i<size; i++)
+					bw.append("\t"+encodings[vcfIndex][i]);
+			}
+			
+			bw.close();
+		}
+	}
+	
+	private class SnpEffInput implements Sink
+	{
+		private final BufferedWriter bw;
+		
+		private final Set<Character> validChars = new HashSet<Character>();
+		
+		private final Set<Character> toChars = new HashSet<Character>();
+		
+		private boolean first = true;
+		
+		SnpEffInput(String outSNPtable4SnpEff) throws Exception
+		{
+			this.bw = new BufferedWriter(new FileWriter(outSNPtable4SnpEff));
+			
+			validChars.add('A'); validChars.add('C'); validChars.add('G'); validChars.add('T');
+		}
+		
+		@Override
+		public void row(Row row) throws Exception
+		{
+			toChars.clear();
+			
+			for(char c : row.calls)
+			{
+				if(validChars.contains(c) && row.ref!=c)
+					toChars.add(c);
+			}
+			
+			for(char toChar : toChars)
+			{
+				if(!first)
+					bw.newLine();
+				else
+					first=false;
+				
+				bw.append(refGenome.getName()+"\t"+row.pos+"\t"+row.ref+"\t"+toChar);
+			}
+		}
+		
+		@Override
+		public void close() throws Exception
+		{
+			bw.close();
+		}
+	}
+}
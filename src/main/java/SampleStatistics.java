@@ -0,0 +1,96 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts of the different kinds of calls in the VCF file of one sample.
+ *
+ */
+public class SampleStatistics
+{
+	public long covCount;
+	public int allPos;
+	public int noCallPos;
+	public int nonStandardRefChars;
+	public int refCallPos;
+	public int varCallPos;
+	public int hetVarCallPos;
+	public int discardedRefCall;
+	public int discardedVarCall;
+	public int filteredVarCall;
+	public int unknownCall;
+	
+	/**
+	 * Adds the counts of another part of the same VCF file.
+	 * 
+	 * @param other	the statistics of the other part
+	 */
+	public void add(SampleStatistics other)
+	{
+		covCount += other.covCount;
+		allPos += other.allPos;
+		noCallPos += other.noCallPos;
+		nonStandardRefChars += other.nonStandardRefChars;
+		refCallPos += other.refCallPos;
+		varCallPos += other.varCallPos;
+		hetVarCallPos += other.hetVarCallPos;
+		discardedRefCall += other.discardedRefCall;
+		discardedVarCall += other.discardedVarCall;
+		filteredVarCall += other.filteredVarCall;
+		unknownCall += other.unknownCall;
+	}
+	
+	/**
+	 * @return	the number of positions without a base call
+	 */
+	public int getNs()
+	{
+		return discardedRefCall+discardedVarCall+noCallPos+unknownCall+nonStandardRefChars;
+	}
+	
+	/**
+	 * @return	the percentage of positions without a base call (rounded to two decimal places)
+	 */
+	public double getNPercent()
+	{
+		return Math.round(((getNs()*100d)/allPos)*100)/100d;
+	}
+	
+	/**
+	 * @return	the mean coverage (rounded to two decimal places)
+	 */
+	public double getCoverage()
+	{
+		return Math.round((covCount/(double)allPos)*100)/100d;
+	}
+	
+	/**
+	 * @param sampleName	the name of the sample
+	 * @return	the line of the sample in the statistics table
+	 */
+	public String toTableLine(String sampleName)
+	{
+		return sampleName+"\t"+varCallPos+"\t"+hetVarCallPos+"\t"+getCoverage()+"\t"+(100-getNPercent())+"\t"+refCallPos+"\t"+allPos+"\t"+noCallPos+"\t"+discardedRefCall+"\t"+discardedVarCall+"\t"+filteredVarCall+"\t"+unknownCall+"\n";
+	}
+	
+	/**
+	 * @return	the statistics as entries for the JSON output
+	 */
+	public Map<String,Object> toMap()
+	{
+		HashMap<String,Object> sample_map = new HashMap<>();
+		
+		sample_map.put("SNP Calls (all)",varCallPos );
+		sample_map.put("SNP Calls (het)", hetVarCallPos);
+		sample_map.put("coverage (fold)", getCoverage());
+		sample_map.put("coverage (percent)", (100-getNPercent()));
+		sample_map.put("refCall",refCallPos);
+		sample_map.put("allPos", allPos);
+		sample_map.put("noCall", noCallPos);
+		sample_map.put("discardedRefCall", discardedRefCall);
+		sample_map.put("discardedVarCall", discardedVarCall);
+		sample_map.put("filteredVarCall", filteredVarCall);
+		sample_map.put("unhandledGenotype", unknownCall);
+		
+		return sample_map;
+	}
+}
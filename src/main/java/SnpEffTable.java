@@ -0,0 +1,258 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The SNP effects of a SnpEff result file (txt format) in columns.
+ * 
+ * Only the columns written to the SNP tables are kept. The text columns
+ * are stored as indices into a table of distinct strings, so repeated
+ * values (effects, gene IDs and names, ...) are only held once. The
+ * entries are sorted by position; entries of the same position keep the
+ * order of the file. They are joined to the sorted SNP positions by
+ * walking both at the same time (see {@link #seek(int)}).
+ *
+ */
+public class SnpEffTable
+{
+	private static final int GENE_ID = 0;
+	private static final int GENE_NAME = 1;
+	private static final int EFFECT = 2;
+	private static final int AA_CHANGE = 3;
+	private static final int CODON_CHANGE = 4;
+	private static final int CODON_NUM = 5;
+	
+	/** the columns of the file the text columns are read from (in the order of the constants above) */
+	private static final int[] COLUMNS = {9, 10, 15, 16, 17, 18};
+	
+	private int size = 0;
+	
+	private int[] positions = new int[1024];
+	
+	private char[] to = new char[1024];
+	
+	/** the text columns, indices into strings */
+	private int[][] values = new int[COLUMNS.length][1024];
+	
+	private final List<String> strings = new ArrayList<String>();
+	
+	private final Map<String,Integer> stringIndices = new HashMap<String, Integer>();
+	
+	/** the gene of each string used as gene ID (or null) */
+	private Gene[] genes = new Gene[0];
+	
+	//index of the first entry not before the last position sought
+	private int cursor = 0;
+	
+	/**
+	 * Reads a SnpEff result file.
+	 * 
+	 * @param filepath	the SnpEff result file
+	 * @throws Exception
+	 */
+	public SnpEffTable(String filepath) throws Exception
+	{
+		BufferedReader br = new BufferedReader(new FileReader(filepath));
+		
+		String line;
+		String[] cells;
+		boolean sorted = true;
+		
+		while((line=br.readLine())!=null)
+		{
+			if(line.startsWith("#"))
+				continue;
+			
+			cells = line.split("\t",-1);
+			if(cells.length<21)
+				throw new Error("ERROR: Less than 21 columns in the SnpEff result file:\n"+line);
+			
+			if(size==positions.length)
+			{
+				int capacity = size+(size>>1)+1;
+				positions = Arrays.copyOf(positions, capacity);
+				to = Arrays.copyOf(to, capacity);
+				for(int column=0; column<values.length; column++)
+					values[column] = Arrays.copyOf(values[column], capacity);
+			}
+			
+			positions[size] = Integer.parseInt(cells[1]);
+			to[size] = cells[3].charAt(0);
+			for(int column=0; column<COLUMNS.length; column++)
+				values[column][size] = intern(cells[COLUMNS[column]]);
+			
+			if(size>0 && positions[size]<positions[size-1])
+				sorted = false;
+			size++;
+		}
+		
+		br.close();
+		
+		if(!sorted)
+			sort();
+	}
+	
+	private int intern(String value)
+	{
+		Integer index = stringIndices.get(value);
+		if(index==null)
+		{
+			index = strings.size();
+			strings.add(value);
+			stringIndices.put(value, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Sorts the entries by position, keeping the order of the file for
+	 * entries of the same position.
+	 */
+	private void sort()
+	{
+		long[] keys = new long[size];
+		for(int i=0; i<size; i++)
+			keys[i] = ((long)positions[i]<<32) | i;
+		Arrays.sort(keys);
+		
+		int[] sortedPositions = new int[size];
+		char[] sortedTo = new char[size];
+		int[][] sortedValues = new int[values.length][size];
+		
+		int index;
+		for(int i=0; i<size; i++)
+		{
+			index = (int)keys[i];
+			sortedPositions[i] = positions[index];
+			sortedTo[i] = to[index];
+			for(int column=0; column<values.length; column++)
+				sortedValues[column][i] = values[column][index];
+		}
+		
+		positions = sortedPositions;
+		to = sortedTo;
+		values = sortedValues;
+	}
+	
+	/**
+	 * Looks up the genes of the gene IDs.
+	 * 
+	 * @param geneMap	the genes by name
+	 */
+	public void setGenes(Map<String,Gene> geneMap)
+	{
+		genes = new Gene[strings.size()];
+		for(int i=0; i<genes.length; i++)
+			genes[i] = geneMap.get(strings.get(i));
+	}
+	
+	/**
+	 * Moves to the entries of a position. The positions must be sought in
+	 * ascending order.
+	 * 
+	 * @param pos	the 1-based position
+	 * @return	the index of the first entry of the position
+	 * 			(the entries end at {@link #end(int)})
+	 */
+	public int seek(int pos)
+	{
+		while(cursor<size && positions[cursor]<pos)
+			cursor++;
+		return cursor;
+	}
+	
+	/**
+	 * @param first	the index of the first entry of a position
+	 * @return	the index after the last entry of the position
+	 */
+	public int end(int first)
+	{
+		int end = first;
+		while(end<size && positions[end]==positions[first])
+			end++;
+		return end;
+	}
+	
+	/**
+	 * Checks that all positions have entries (without moving the cursor).
+	 * 
+	 * @param sortedPositions	1-based positions in ascending order
+	 * @return	the first position without an entry or 0 if all positions have entries
+	 */
+	public int findMissing(int[] sortedPositions)
+	{
+		int index = 0;
+		for(int pos : sortedPositions)
+		{
+			while(index<size && positions[index]<pos)
+				index++;
+			if(index==size || positions[index]!=pos)
+				return pos;
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return	the number of entries
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	public int getPos(int index)
+	{
+		return positions[index];
+	}
+	
+	/**
+	 * @return	the first base of the alternative allele
+	 */
+	public char getTo(int index)
+	{
+		return to[index];
+	}
+	
+	public String getGeneID(int index)
+	{
+		return strings.get(values[GENE_ID][index]);
+	}
+	
+	public String getGeneName(int index)
+	{
+		return strings.get(values[GENE_NAME][index]);
+	}
+	
+	public String getEffect(int index)
+	{
+		return strings.get(values[EFFECT][index]);
+	}
+	
+	public String getAaChange(int index)
+	{
+		return strings.get(values[AA_CHANGE][index]);
+	}
+	
+	public String getCodonChange(int index)
+	{
+		return strings.get(values[CODON_CHANGE][index]);
+	}
+	
+	public String getCodonNum(int index)
+	{
+		return strings.get(values[CODON_NUM][index]);
+	}
+	
+	/**
+	 * @return	the gene of the gene ID (see {@link #setGenes(Map)}) or null
+	 */
+	public Gene getGene(int index)
+	{
+		int id = values[GENE_ID][index];
+		return id<genes.length ? genes[id] : null;
+	}
+}
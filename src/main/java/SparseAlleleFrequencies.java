@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+/**
+ * Holds only the allele frequencies of variant calls.
+ *
+ * For each sample the positions with a frequency are kept in a sorted
+ * primitive array with a parallel array of frequencies. The frequencies are
+ * quantised to per mille as shorts. This is the precision the frequencies
+ * are written with (in percent with one decimal place), so the written
+ * values are the same as with full double precision.
+ *
+ */
+public class SparseAlleleFrequencies implements AlleleFrequencies
+{
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final int[][] positions;
+
+	private final short[][] perMille;
+
+	private final int[] sizes;
+
+	/**
+	 * @param numSamples	the number of samples
+	 */
+	public SparseAlleleFrequencies(int numSamples)
+	{
+		this.positions = new int[numSamples][INITIAL_CAPACITY];
+		this.perMille = new short[numSamples][INITIAL_CAPACITY];
+		this.sizes = new int[numSamples];
+	}
+
+	@Override
+	public double get(int pos, int sample)
+	{
+		int index = indexOf(pos, sample);
+
+		if(index>=0)
+			return perMille[sample][index]/1000d;
+
+		return 0;
+	}
+
+	@Override
+	public void set(int pos, int sample, double freq)
+	{
+		int index = indexOf(pos, sample);
+		short value = (short)Math.round(freq*1000d);
+
+		if(index>=0)
+			perMille[sample][index] = value;
+		else if(value!=0)
+			insert(sample, -(index+1), pos, value);
+	}
+
+	/**
+	 * Binary search with a shortcut for the last (most recently appended) entry.
+	 *
+	 * @return	the index of the position if present, otherwise (-(insertion point) - 1)
+	 */
+	private int indexOf(int pos, int sample)
+	{
+		int[] samplePositions = positions[sample];
+		int size = sizes[sample];
+
+		if(size==0 || samplePositions[size-1]<pos)
+			return -(size+1);
+		if(samplePositions[size-1]==pos)
+			return size-1;
+
+		return Arrays.binarySearch(samplePositions, 0, size-1, pos);
+	}
+
+	private void insert(int sample, int index, int pos, short value)
+	{
+		int size = sizes[sample];
+
+		if(size==positions[sample].length)
+		{
+			int capacity = size+(size>>1)+1;
+			positions[sample] = Arrays.copyOf(positions[sample], capacity);
+			perMille[sample] = Arrays.copyOf(perMille[sample], capacity);
+		}
+
+		if(index<size)
+		{
+			System.arraycopy(positions[sample], index, positions[sample], index+1, size-index);
+			System.arraycopy(perMille[sample], index, perMille[sample], index+1, size-index);
+		}
+
+		positions[sample][index] = pos;
+		perMille[sample][index] = value;
+		sizes[sample]++;
+	}
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+/**
+ * Stores only the base calls that differ from the reference.
+ *
+ * For each sample the deviating calls are kept in a sorted primitive
+ * position array with a parallel array of calls. All other cells implicitly
+ * hold the reference base, so memory scales with the number of
+ * non-reference calls instead of genome length times samples.
+ *
+ * VCF files are sorted, so calls are almost always appended at the end of
+ * a sample's arrays.
+ *
+ */
+public class SparseGenotypeMatrix implements GenotypeMatrix
+{
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final ReferenceGenome reference;
+
+	private final int[][] positions;
+
+	private final char[][] calls;
+
+	private final int[] sizes;
+
+	/**
+	 * Creates a matrix for the given number of samples in which every
+	 * cell holds the reference base of its position.
+	 *
+	 * @param reference	the reference genome
+	 * @param numSamples	the number of samples (columns)
+	 */
+	public SparseGenotypeMatrix(ReferenceGenome reference, int numSamples)
+	{
+		this.reference = reference;
+		this.positions = new int[numSamples][INITIAL_CAPACITY];
+		this.calls = new char[numSamples][INITIAL_CAPACITY];
+		this.sizes = new int[numSamples];
+	}
+
+	@Override
+	public char get(int pos, int sample)
+	{
+		int index = indexOf(pos, sample);
+
+		if(index>=0)
+			return calls[sample][index];
+
+		return reference.charAt(pos);
+	}
+
+	@Override
+	public void set(int pos, int sample, char call)
+	{
+		int index = indexOf(pos, sample);
+
+		if(call==reference.charAt(pos))
+		{
+			if(index>=0)
+				remove(sample, index);
+		}
+		else if(index>=0)
+			calls[sample][index] = call;
+		else
+			insert(sample, -(index+1), pos, call);
+	}
+
+	@Override
+	public void getRow(int sample, int start, int end, byte[] dest)
+	{
+		reference.copy(start, end, dest, 0);
+
+		int index = indexOf(start, sample);
+		if(index<0)
+			index = -(index+1);
+
+		int[] samplePositions = positions[sample];
+		for(; index<sizes[sample] && samplePositions[index]<end; index++)
+			dest[samplePositions[index]-start] = (byte)calls[sample][index];
+	}
+
+	@Override
+	public int length()
+	{
+		return reference.length();
+	}
+
+	@Override
+	public int numSamples()
+	{
+		return sizes.length;
+	}
+
+	/**
+	 * Binary search with a shortcut for the last (most recently appended) entry.
+	 *
+	 * @return	the index of the position if present, otherwise (-(insertion point) - 1)
+	 */
+	private int indexOf(int pos, int sample)
+	{
+		int[] samplePositions = positions[sample];
+		int size = sizes[sample];
+
+		if(size==0 || samplePositions[size-1]<pos)
+			return -(size+1);
+		if(samplePositions[size-1]==pos)
+			return size-1;
+
+		int low = 0;
+		int high = size-2;
+		int mid;
+		while(low<=high)
+		{
+			mid = (low+high)>>>1;
+			if(samplePositions[mid]<pos)
+				low = mid+1;
+			else if(samplePositions[mid]>pos)
+				high = mid-1;
+			else
+				return mid;
+		}
+		return -(low+1);
+	}
+
+	private void insert(int sample, int index, int pos, char call)
+	{
+		int size = sizes[sample];
+
+		if(size==positions[sample].length)
+		{
+			int capacity = size+(size>>1)+1;
+			positions[sample] = Arrays.copyOf(positions[sample], capacity);
+			calls[sample] = Arrays.copyOf(calls[sample], capacity);
+		}
+
+		if(index<size)
+		{
+			System.arraycopy(positions[sample], index, positions[sample], index+1, size-index);
+			System.arraycopy(calls[sample], index, calls[sample], index+1, size-index);
+		}
+
+		positions[sample][index] = pos;
+		calls[sample][index] = call;
+		sizes[sample]++;
+	}
+
+	private void remove(int sample, int index)
+	{
+		int size = sizes[sample];
+
+		if(index<size-1)
+		{
+			System.arraycopy(positions[sample], index+1, positions[sample], index, size-index-1);
+			System.arraycopy(calls[sample], index+1, calls[sample], index, size-index-1);
+		}
+
+		sizes[sample]--;
+	}
+}
@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a (decompressed) VCF stream into a reusable buffer.
+ *
+ */
+public class StreamLineReader implements VCFLineReader
+{
+	private final InputStream in;
+	
+	private byte[] buffer = new byte[1<<16];
+	
+	private ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+	
+	private int limit = 0;
+	
+	private int lineStart = 0;
+	
+	private int lineEnd = 0;
+	
+	private int nextLineStart = 0;
+	
+	/** offset of the first byte of the buffer in the stream */
+	private long bufferOffset = 0;
+	
+	private boolean eof = false;
+	
+	public StreamLineReader(InputStream in)
+	{
+		this.in = in;
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		lineStart = nextLineStart;
+		int scan = lineStart;
+		
+		while(true)
+		{
+			for(int i=scan; i<limit; i++)
+			{
+				if(buffer[i]=='\n')
+				{
+					setLine(i, i+1);
+					return true;
+				}
+			}
+			
+			if(eof)
+			{
+				if(lineStart<limit)
+				{
+					setLine(limit, limit);
+					return true;
+				}
+				return false;
+			}
+			
+			scan = limit-lineStart;
+			fill();
+		}
+	}
+	
+	@Override
+	public ByteBuffer buffer()
+	{
+		return wrapped;
+	}
+	
+	@Override
+	public int start()
+	{
+		return lineStart;
+	}
+	
+	@Override
+	public int end()
+	{
+		return lineEnd;
+	}
+	
+	@Override
+	public long nextLineOffset()
+	{
+		return bufferOffset+nextLineStart;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		in.close();
+	}
+	
+	private void setLine(int end, int next)
+	{
+		if(end>lineStart && buffer[end-1]=='\r')
+			end--;
+		lineEnd = end;
+		nextLineStart = next;
+	}
+	
+	/**
+	 * Moves the current (incomplete) line to the start of the buffer and
+	 * reads more data behind it.
+	 */
+	private void fill() throws IOException
+	{
+		int remaining = limit-lineStart;
+		
+		if(remaining==buffer.length)
+		{
+			buffer = Arrays.copyOf(buffer, buffer.length*2);
+			wrapped = ByteBuffer.wrap(buffer);
+		}
+		else if(lineStart>0)
+			System.arraycopy(buffer, lineStart, buffer, 0, remaining);
+		
+		bufferOffset += lineStart;
+		lineStart = 0;
+		limit = remaining;
+		
+		int read = in.read(buffer, limit, buffer.length-limit);
+		if(read==-1)
+			eof = true;
+		else
+			limit += read;
+	}
+}
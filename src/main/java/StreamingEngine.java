@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses all VCF files in lockstep along the reference genome without
+ * storing the calls of all positions.
+ * 
+ * The files are parsed window by window: all files are advanced to the
+ * end of the window (one task per file), then the SNP positions of the
+ * window are copied to a {@link SNPStore} and the window is written to the
+ * full alignment. The calls of all samples are only held for the
+ * positions of the current window.
+ *
+ */
+public class StreamingEngine
+{
+	/** the number of positions in a window */
+	public static final int WINDOW_SIZE = 1<<16;
+	
+	private final ReferenceGenome reference;
+	
+	private final List<VCFSampleParser> parsers;
+	
+	private final GenotypeWindow window;
+	
+	private final SNPStore store;
+	
+	private final PositionSet snpPositions;
+	
+	private final FullAlignmentWriter alignment;
+	
+	/**
+	 * @param reference	the reference genome
+	 * @param parsers	the parsers of all files, parsing into the views of the window
+	 * @param window	the window
+	 * @param store	the store the calls at SNP positions are added to
+	 * @param snpPositions	the SNP positions (1-based) found by the parsers
+	 * @param alignment	the full alignment (reference first, then all samples)
+	 */
+	public StreamingEngine(ReferenceGenome reference, List<VCFSampleParser> parsers, GenotypeWindow window, SNPStore store, PositionSet snpPositions, FullAlignmentWriter alignment)
+	{
+		this.reference = reference;
+		this.parsers = parsers;
+		this.window = window;
+		this.store = store;
+		this.snpPositions = snpPositions;
+		this.alignment = alignment;
+	}
+	
+	/**
+	 * Parses all files.
+	 * 
+	 * @param pool	the threads the files are parsed on
+	 * @throws Exception
+	 */
+	public void run(ExecutorService pool) throws Exception
+	{
+		for(VCFSampleParser parser : parsers)
+			parser.open();
+		
+		byte[] referenceRow = new byte[WINDOW_SIZE];
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		for(int start=0; start<reference.length(); start+=WINDOW_SIZE)
+		{
+			window.reset(start);
+			final int end = window.end();
+			
+			results.clear();
+			for(final VCFSampleParser parser : parsers)
+			{
+				results.add(pool.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						parser.advance(end);
+						return null;
+					}
+				}));
+			}
+			
+			try
+			{
+				for(Future<?> result : results)
+					result.get();
+			}
+			catch(ExecutionException e)
+			{
+				pool.shutdownNow();
+				if(e.getCause() instanceof Error)
+					throw (Error)e.getCause();
+				throw (Exception)e.getCause();
+			}
+			
+			for(int pos=start; pos<end; pos++)
+			{
+				if(snpPositions.contains(pos+1))
+					store.add(pos, window);
+			}
+			
+			reference.copy(start, end, referenceRow, 0);
+			alignment.write(0, start, referenceRow, 0, end-start);
+			for(int sample=0; sample<window.numSamples(); sample++)
+				alignment.write(sample+1, start, window.row(sample), 0, end-start);
+		}
+		
+		for(VCFSampleParser parser : parsers)
+			parser.close();
+		
+		alignment.close();
+	}
+}
@@ -0,0 +1,531 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tokenizer for a single data line of a VCF file.
+ * 
+ * The field offsets of the line are found in one scan over the bytes and
+ * the values (POS, QUAL, the samples' genotypes and depths) are parsed in
+ * place without creating Strings. The subfields of a sample column are
+ * only split when a value of the sample is requested, and only up to the
+ * last subfield that is used. The same instance is reused for all lines of
+ * a file.
+ * 
+ * The FORMAT column of the last line and the positions of the keys in it
+ * are kept, so the keys are only looked up again when the FORMAT column
+ * changes (usually a few times per file).
+ *
+ */
+public class TextVCFRecord implements VCFRecord
+{
+	private static final int POS = 1;
+	private static final int ALT = 4;
+	private static final int QUAL = 5;
+	private static final int INFO = 7;
+	private static final int FORMAT = 8;
+	private static final int FIRST_SAMPLE = 9;
+	
+	/** symbolic alternative alleles of gVCF reference blocks */
+	private static final byte[][] REFERENCE_BLOCK_ALTS = {bytes("<NON_REF>"), bytes("<*>")};
+	
+	private static final byte[] END = bytes("END");
+	
+	/** largest integer up to which every long can be converted to a double exactly */
+	private static final long MAX_EXACT_MANTISSA = 1L<<53;
+	
+	/** powers of ten that are exactly representable as doubles */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	
+	static
+	{
+		POWERS_OF_TEN[0] = 1;
+		for(int i=1; i<POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i-1]*10;
+	}
+	
+	private ByteBuffer line;
+	private int lineStart;
+	private int lineEnd;
+	
+	private final int numFields;
+	
+	private final int[] fieldStarts;
+	private final int[] fieldEnds;
+	
+	/** the FORMAT column the positions of the keys were resolved for */
+	private byte[] format = new byte[32];
+	private int formatLength = -1;
+	
+	/** the positions of the FORMAT_KEYS in the sample columns (-1 if missing) */
+	private final int[] formatIndices = new int[FORMAT_KEYS.length];
+	private int maxFormatIndex;
+	
+	/** the sample column the subfields belong to (-1 if not split yet) */
+	private int subfieldSample;
+	private int[] subfieldStarts = new int[8];
+	private int[] subfieldEnds = new int[8];
+	private int numSubfields;
+	
+	/**
+	 * @param numSamples	the number of sample columns (further columns are ignored)
+	 */
+	public TextVCFRecord(int numSamples)
+	{
+		this.numFields = FIRST_SAMPLE+numSamples;
+		this.fieldStarts = new int[numFields];
+		this.fieldEnds = new int[numFields];
+	}
+	
+	/**
+	 * Finds the fields of a line.
+	 * 
+	 * @param line	the buffer holding the line
+	 * @param start	offset of the first byte of the line
+	 * @param end	offset after the last byte of the line
+	 */
+	public void parse(ByteBuffer line, int start, int end)
+	{
+		this.line = line;
+		this.lineStart = start;
+		this.lineEnd = end;
+		
+		int field = 0;
+		fieldStarts[0] = start;
+		for(int i=start; i<end; i++)
+		{
+			if(line.get(i)=='\t')
+			{
+				fieldEnds[field] = i;
+				if(++field==numFields)
+					break;
+				fieldStarts[field] = i+1;
+			}
+		}
+		
+		if(field<numFields)
+		{
+			if(field<numFields-1)
+				throw new Error("ERROR: Line with less than "+numFields+" columns in vcf file:\n"+toString());
+			fieldEnds[field] = end;
+		}
+		
+		if(!formatEquals())
+			resolveFormat();
+		
+		subfieldSample = -1;
+	}
+	
+	private boolean formatEquals()
+	{
+		int start = fieldStarts[FORMAT];
+		int length = fieldEnds[FORMAT]-start;
+		
+		if(length!=formatLength)
+			return false;
+		for(int i=0; i<length; i++)
+		{
+			if(line.get(start+i)!=format[i])
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Keeps the FORMAT column of the line and finds the positions of the keys in it.
+	 */
+	private void resolveFormat()
+	{
+		int start = fieldStarts[FORMAT];
+		int end = fieldEnds[FORMAT];
+		
+		formatLength = end-start;
+		if(formatLength>format.length)
+			format = new byte[formatLength];
+		for(int i=start; i<end; i++)
+			format[i-start] = line.get(i);
+		
+		Arrays.fill(formatIndices, -1);
+		maxFormatIndex = -1;
+		
+		int index = 0;
+		int entryStart = start;
+		for(int i=start; i<=end; i++)
+		{
+			if(i==end || line.get(i)==':')
+			{
+				for(int key=0; key<FORMAT_KEYS.length; key++)
+				{
+					if(formatIndices[key]<0 && i-entryStart==FORMAT_KEYS[key].length() && matches(entryStart, i, FORMAT_KEYS[key]))
+					{
+						formatIndices[key] = index;
+						maxFormatIndex = index;
+					}
+				}
+				index++;
+				entryStart = i+1;
+			}
+		}
+	}
+	
+	/**
+	 * Finds the subfields of a sample column up to the last one that is used.
+	 */
+	private void split(int sample)
+	{
+		if(subfieldSample==sample)
+			return;
+		
+		int start = fieldStarts[FIRST_SAMPLE+sample];
+		int end = fieldEnds[FIRST_SAMPLE+sample];
+		
+		numSubfields = 0;
+		subfieldStarts[0] = start;
+		for(int i=start; i<end && numSubfields<=maxFormatIndex; i++)
+		{
+			if(line.get(i)==':')
+				addSubfield(i);
+		}
+		if(numSubfields<=maxFormatIndex)
+			addSubfield(end);
+		
+		subfieldSample = sample;
+	}
+	
+	/**
+	 * @return	the index of the subfield of a FORMAT key in the split sample
+	 * 			column or -1 if it is missing
+	 */
+	private int subfield(int key)
+	{
+		int index = formatIndices[key];
+		return index<numSubfields ? index : -1;
+	}
+	
+	/**
+	 * @return	true if the subfield is empty or '.'
+	 */
+	private boolean isMissing(int index)
+	{
+		int start = subfieldStarts[index];
+		int end = subfieldEnds[index];
+		return start==end || (end-start==1 && line.get(start)=='.');
+	}
+	
+	private void addSubfield(int end)
+	{
+		if(numSubfields+1==subfieldStarts.length)
+		{
+			subfieldStarts = Arrays.copyOf(subfieldStarts, subfieldStarts.length*2);
+			subfieldEnds = Arrays.copyOf(subfieldEnds, subfieldEnds.length*2);
+		}
+		subfieldEnds[numSubfields] = end;
+		subfieldStarts[++numSubfields] = end+1;
+	}
+	
+	@Override
+	public int getPos()
+	{
+		return parseInt(line, fieldStarts[POS], fieldEnds[POS]);
+	}
+	
+	@Override
+	public int getEnd()
+	{
+		int start = fieldStarts[INFO];
+		int end = fieldEnds[INFO];
+		
+		//find END= at the start of one of the ';' separated entries
+		for(int i=start; i<end; i++)
+		{
+			if((i==start || line.get(i-1)==';') && matches(i, end, END) && i+END.length<end && line.get(i+END.length)=='=')
+			{
+				int valueEnd = i+END.length+1;
+				while(valueEnd<end && line.get(valueEnd)!=';')
+					valueEnd++;
+				return parseInt(line, i+END.length+1, valueEnd);
+			}
+		}
+		
+		return getPos();
+	}
+	
+	@Override
+	public boolean isReferenceBlock()
+	{
+		for(byte[] alt : REFERENCE_BLOCK_ALTS)
+		{
+			if(fieldEnds[ALT]-fieldStarts[ALT]==alt.length && matches(fieldStarts[ALT], fieldEnds[ALT], alt))
+				return true;
+		}
+		return false;
+	}
+	
+	@Override
+	public int getSampleInt(int sample, int key, int missing)
+	{
+		split(sample);
+		
+		int index = subfield(key);
+		
+		if(index<0 || isMissing(index))
+			return missing;
+		
+		return parseInt(line, subfieldStarts[index], subfieldEnds[index]);
+	}
+	
+	private boolean matches(int start, int end, byte[] value)
+	{
+		if(end-start<value.length)
+			return false;
+		for(int i=0; i<value.length; i++)
+		{
+			if(line.get(start+i)!=value[i])
+				return false;
+		}
+		return true;
+	}
+	
+	private boolean matches(int start, int end, String value)
+	{
+		if(end-start<value.length())
+			return false;
+		for(int i=0; i<value.length(); i++)
+		{
+			if(line.get(start+i)!=value.charAt(i))
+				return false;
+		}
+		return true;
+	}
+	
+	private static byte[] bytes(String s)
+	{
+		return s.getBytes(StandardCharsets.ISO_8859_1);
+	}
+	
+	@Override
+	public double getQual()
+	{
+		return parseDouble(line, fieldStarts[QUAL], fieldEnds[QUAL]);
+	}
+	
+	@Override
+	public char getAlt()
+	{
+		if(fieldStarts[ALT]==fieldEnds[ALT])
+			throw new Error("ERROR: Empty ALT column in vcf file:\n"+toString());
+		return (char)(line.get(fieldStarts[ALT]) & 0xFF);
+	}
+	
+	@Override
+	public int getGenotype(int sample)
+	{
+		split(sample);
+		
+		int index = subfield(FORMAT_GT);
+		if(index<0)
+			return GT_OTHER;
+		
+		int start = subfieldStarts[index];
+		
+		if(subfieldEnds[index]-start!=3 || line.get(start+1)!='/')
+			return GT_OTHER;
+		
+		byte a = line.get(start);
+		byte b = line.get(start+2);
+		
+		if(a=='.' && b=='.')
+			return GT_NO_CALL;
+		if(a=='0' && b=='0')
+			return GT_HOM_REF;
+		if(a=='0' && b=='1')
+			return GT_HET;
+		if(a=='1' && b=='1')
+			return GT_HOM_VAR;
+		
+		return GT_OTHER;
+	}
+	
+	@Override
+	public int getDepth(int sample)
+	{
+		split(sample);
+		
+		int index = subfield(FORMAT_AD);
+		if(index>=0 && !isMissing(index))
+			return alleleDepth(index, 0);
+		
+		index = subfield(FORMAT_DP);
+		if(index<0 || isMissing(index))
+			throw new Error("ERROR: Missing depth (AD or DP) in sample column of vcf file:\n"+toString());
+		
+		return parseInt(line, subfieldStarts[index], subfieldEnds[index]);
+	}
+	
+	@Override
+	public int getAlleleDepth(int sample, int allele)
+	{
+		split(sample);
+		
+		int index = subfield(FORMAT_AD);
+		if(index<0)
+			throw new Error("ERROR: Missing allele depths (AD) in sample column of vcf file:\n"+toString());
+		
+		return alleleDepth(index, allele);
+	}
+	
+	/**
+	 * @return	the allele-th entry of the ',' separated list in a subfield
+	 */
+	private int alleleDepth(int index, int allele)
+	{
+		int start = subfieldStarts[index];
+		int end = subfieldEnds[index];
+		
+		for(int i=start; i<end; i++)
+		{
+			if(line.get(i)==',')
+			{
+				if(allele==0)
+				{
+					end = i;
+					break;
+				}
+				allele--;
+				start = i+1;
+			}
+		}
+		
+		if(allele>0)
+			throw new Error("ERROR: Missing allele depth in vcf file:\n"+toString());
+		
+		return parseInt(line, start, end);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return toString(line, lineStart, lineEnd);
+	}
+	
+	/**
+	 * Parses a decimal integer like Integer.parseInt.
+	 * 
+	 * @param bytes	the buffer
+	 * @param start	offset of the first character
+	 * @param end	offset after the last character
+	 * @return	the parsed number
+	 * @throws NumberFormatException	if the bytes are not a valid int
+	 */
+	public static int parseInt(ByteBuffer bytes, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		
+		if(i<end && (bytes.get(i)=='-' || bytes.get(i)=='+'))
+		{
+			negative = bytes.get(i)=='-';
+			i++;
+		}
+		
+		if(i==end)
+			throw numberFormatException(bytes, start, end);
+		
+		long value = 0;
+		int digit;
+		for(; i<end; i++)
+		{
+			digit = bytes.get(i)-'0';
+			if(digit<0 || digit>9)
+				throw numberFormatException(bytes, start, end);
+			value = value*10+digit;
+			if(value>(long)Integer.MAX_VALUE+1)
+				throw numberFormatException(bytes, start, end);
+		}
+		
+		if(negative)
+			value = -value;
+		
+		if(value>Integer.MAX_VALUE)
+			throw numberFormatException(bytes, start, end);
+		
+		return (int)value;
+	}
+	
+	/**
+	 * Parses a decimal number like Double.parseDouble.
+	 * 
+	 * Plain decimals ([sign]digits[.digits]) whose digits fit into 53 bits
+	 * and that have at most 22 decimal places are converted exactly without
+	 * allocating. All other notations are handed to Double.parseDouble.
+	 * 
+	 * @param bytes	the buffer
+	 * @param start	offset of the first character
+	 * @param end	offset after the last character
+	 * @return	the parsed number
+	 * @throws NumberFormatException	if the bytes are not a valid double
+	 */
+	public static double parseDouble(ByteBuffer bytes, int start, int end)
+	{
+		int i = start;
+		boolean negative = false;
+		
+		if(i<end && (bytes.get(i)=='-' || bytes.get(i)=='+'))
+		{
+			negative = bytes.get(i)=='-';
+			i++;
+		}
+		
+		long mantissa = 0;
+		int digits = 0;
+		int decimals = -1;
+		byte b;
+		for(; i<end; i++)
+		{
+			b = bytes.get(i);
+			if(b>='0' && b<='9')
+			{
+				mantissa = mantissa*10+(b-'0');
+				digits++;
+				if(decimals>=0)
+					decimals++;
+				if(mantissa>=MAX_EXACT_MANTISSA)
+					return parseDoubleSlow(bytes, start, end);
+			}
+			else if(b=='.' && decimals<0)
+			{
+				decimals = 0;
+			}
+			else
+			{
+				return parseDoubleSlow(bytes, start, end);
+			}
+		}
+		
+		if(digits==0 || decimals>=POWERS_OF_TEN.length)
+			return parseDoubleSlow(bytes, start, end);
+		
+		// both the mantissa and the power of ten are exact, so the division is correctly rounded
+		double value = decimals>0 ? mantissa/POWERS_OF_TEN[decimals] : mantissa;
+		
+		return negative ? -value : value;
+	}
+	
+	private static double parseDoubleSlow(ByteBuffer bytes, int start, int end)
+	{
+		return Double.parseDouble(toString(bytes, start, end));
+	}
+	
+	private static NumberFormatException numberFormatException(ByteBuffer bytes, int start, int end)
+	{
+		return new NumberFormatException("For input string: \""+toString(bytes, start, end)+"\"");
+	}
+	
+	private static String toString(ByteBuffer bytes, int start, int end)
+	{
+		byte[] copy = new byte[end-start];
+		for(int i=start; i<end; i++)
+			copy[i-start] = bytes.get(i);
+		return new String(copy, StandardCharsets.ISO_8859_1);
+	}
+}
@@ -0,0 +1,65 @@
+import java.io.IOException;
+
+/**
+ * Reads the records of a part of a text VCF file. Header lines and empty
+ * lines are skipped.
+ * 
+ * Only the lines that belong to the part are read (see {@link VCFChunk}).
+ *
+ */
+public class TextVCFRecordReader implements VCFRecordReader
+{
+	private final VCFLineReader reader;
+	
+	private final TextVCFRecord record;
+	
+	private final long length;
+	
+	private boolean hasLines;
+	
+	/**
+	 * @param reader	the lines of the file starting at the part
+	 * @param chunk	the part
+	 * @param numSamples	the number of sample columns that are read
+	 * @throws IOException
+	 */
+	public TextVCFRecordReader(VCFLineReader reader, VCFChunk chunk, int numSamples) throws IOException
+	{
+		this.reader = reader;
+		this.record = new TextVCFRecord(numSamples);
+		this.length = chunk.length;
+		
+		//the first line belongs to the previous part
+		this.hasLines = chunk.first || (reader.next() && reader.nextLineOffset()<=length);
+	}
+	
+	@Override
+	public boolean next() throws IOException
+	{
+		while(hasLines && reader.next())
+		{
+			hasLines = reader.nextLineOffset()<=length;
+			
+			if(reader.end()>reader.start() && reader.buffer().get(reader.start())!='#')
+			{
+				record.parse(reader.buffer(), reader.start(), reader.end());
+				return true;
+			}
+		}
+		
+		hasLines = false;
+		return false;
+	}
+	
+	@Override
+	public VCFRecord record()
+	{
+		return record;
+	}
+	
+	@Override
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+}
@@ -0,0 +1,328 @@
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A part of a VCF file that can be parsed independently of the other parts.
+ * 
+ * Uncompressed files are split into byte ranges and BGZF compressed files
+ * into runs of BGZF blocks. Plain gzip files cannot be split and consist
+ * of a single part, as do BCF files (the records cannot be found without
+ * an index).
+ * 
+ * The ranges do not have to start at line boundaries. A line belongs to
+ * the part that contains its first line break at or after the start of the
+ * part: every part except the first skips everything up to and including
+ * its first line break, and stops after the first line ending at or behind
+ * its end.
+ *
+ */
+public class VCFChunk
+{
+	public static final int PLAIN = 0;
+	public static final int GZIP = 1;
+	public static final int BGZF = 2;
+	
+	/** the smallest size of a part */
+	public static final long MIN_SIZE = 1<<16;
+	
+	private static final int BGZF_HEADER_SIZE = 18;
+	
+	/** number of BGZF blocks inflated ahead of the reader per inflating thread */
+	private static final int BLOCKS_AHEAD_PER_THREAD = 4;
+	
+	/** offset of the part in the file (start of the first BGZF block for compressed files) */
+	public long offset;
+	
+	/** number of (decompressed) bytes of the part */
+	public long length;
+	
+	/** the compression of the file (PLAIN, GZIP or BGZF) */
+	public int compression;
+	
+	/** true for the first part of the file */
+	public boolean first;
+	
+	/** true if the file is a BCF file */
+	public boolean bcf;
+	
+	private VCFChunk(long offset, long length, int compression, boolean first)
+	{
+		this.offset = offset;
+		this.length = length;
+		this.compression = compression;
+		this.first = first;
+	}
+	
+	/**
+	 * Splits a VCF file into parts of about the given size.
+	 * 
+	 * @param vcfFile	the VCF file
+	 * @param chunkSize	the size of the parts in bytes (compressed size for BGZF files; at least {@link #MIN_SIZE})
+	 * @return	the parts of the file in file order
+	 * @throws IOException
+	 */
+	public static List<VCFChunk> split(String vcfFile, long chunkSize) throws IOException
+	{
+		List<VCFChunk> chunks = new ArrayList<VCFChunk>();
+		
+		if(chunkSize<MIN_SIZE)
+			throw new IllegalArgumentException("Chunk size "+chunkSize+" is below "+MIN_SIZE);
+		
+		int compression = detectCompression(vcfFile);
+		
+		if(isBCF(vcfFile, compression))
+		{
+			VCFChunk chunk = new VCFChunk(0, Long.MAX_VALUE, compression, true);
+			chunk.bcf = true;
+			chunks.add(chunk);
+		}
+		else if(compression==GZIP)
+		{
+			chunks.add(new VCFChunk(0, Long.MAX_VALUE, GZIP, true));
+		}
+		else if(compression==PLAIN)
+		{
+			long fileLength = new File(vcfFile).length();
+			for(long offset=0; offset==0 || offset<fileLength; offset+=chunkSize)
+				chunks.add(new VCFChunk(offset, Math.min(chunkSize, fileLength-offset), PLAIN, offset==0));
+		}
+		else
+		{
+			splitBGZF(vcfFile, chunkSize, chunks);
+		}
+		
+		return chunks;
+	}
+	
+	/**
+	 * Groups the BGZF blocks of a file. Only the block headers and the
+	 * decompressed sizes at the end of each block are read.
+	 */
+	private static void splitBGZF(String vcfFile, long chunkSize, List<VCFChunk> chunks) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(vcfFile, "r");
+		FileChannel channel = raf.getChannel();
+		long fileLength = channel.size();
+		
+		ByteBuffer header = ByteBuffer.allocate(BGZF_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		
+		long chunkStart = 0;
+		long chunkLength = 0;
+		long offset = 0;
+		int blockSize;
+		while(offset<fileLength)
+		{
+			header.clear();
+			readFully(channel, header, offset);
+			if(!BGZFInputStream.isBGZF(header.array(), BGZF_HEADER_SIZE) || header.getShort(10)!=6)
+			{
+				//unusual block layout, do not split
+				raf.close();
+				chunks.clear();
+				chunks.add(new VCFChunk(0, Long.MAX_VALUE, BGZF, true));
+				return;
+			}
+			blockSize = (header.getShort(16) & 0xFFFF)+1;
+			
+			size.clear();
+			readFully(channel, size, offset+blockSize-4);
+			
+			if(offset-chunkStart>=chunkSize)
+			{
+				chunks.add(new VCFChunk(chunkStart, chunkLength, BGZF, chunks.isEmpty()));
+				chunkStart = offset;
+				chunkLength = 0;
+			}
+			
+			chunkLength += size.getInt(0) & 0xFFFFFFFFL;
+			offset += blockSize;
+		}
+		raf.close();
+		
+		chunks.add(new VCFChunk(chunkStart, chunkLength, BGZF, chunks.isEmpty()));
+	}
+	
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException
+	{
+		while(buffer.hasRemaining())
+		{
+			if(channel.read(buffer, offset+buffer.position())<0)
+				throw new IOException("Truncated BGZF file");
+		}
+	}
+	
+	/**
+	 * Detects the compression of a file from its first bytes.
+	 * 
+	 * @param file	the file
+	 * @return	PLAIN, GZIP or BGZF
+	 * @throws IOException
+	 */
+	public static int detectCompression(String file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		byte[] header = new byte[BGZF_HEADER_SIZE];
+		int length = 0;
+		int read;
+		while(length<header.length && (read=in.read(header, length, header.length-length))!=-1)
+			length += read;
+		in.close();
+		
+		if(BGZFInputStream.isBGZF(header, length))
+			return BGZF;
+		if(length>=2 && (header[0] & 0xFF)==0x1f && (header[1] & 0xFF)==0x8b)
+			return GZIP;
+		return PLAIN;
+	}
+	
+	/**
+	 * @param vcfFile	the VCF file
+	 * @return	a single part covering the whole file
+	 * @throws IOException
+	 */
+	public static VCFChunk whole(String vcfFile) throws IOException
+	{
+		int compression = detectCompression(vcfFile);
+		VCFChunk chunk = new VCFChunk(0, Long.MAX_VALUE, compression, true);
+		chunk.bcf = isBCF(vcfFile, compression);
+		return chunk;
+	}
+	
+	/**
+	 * Reads the names of the samples from the header (#CHROM line) of a
+	 * VCF or BCF file.
+	 * 
+	 * @param vcfFile	the VCF file
+	 * @return	the names of the sample columns (empty if there is no header line)
+	 * @throws IOException
+	 */
+	public static List<String> readSampleNames(String vcfFile) throws IOException
+	{
+		VCFChunk chunk = whole(vcfFile);
+		
+		if(chunk.bcf)
+		{
+			BCFReader reader = new BCFReader(chunk.openStream(vcfFile, null, 1));
+			List<String> names = reader.getSampleNames();
+			reader.close();
+			return names;
+		}
+		
+		List<String> names = new ArrayList<String>();
+		VCFLineReader reader = chunk.open(vcfFile, null, 1);
+		while(reader.next() && reader.end()>reader.start() && reader.buffer().get(reader.start())=='#')
+		{
+			byte[] line = new byte[reader.end()-reader.start()];
+			for(int i=0; i<line.length; i++)
+				line[i] = reader.buffer().get(reader.start()+i);
+			
+			String header = new String(line, StandardCharsets.ISO_8859_1);
+			if(header.startsWith("#CHROM"))
+			{
+				String[] columns = header.split("\t");
+				for(int i=9; i<columns.length; i++)
+					names.add(columns[i]);
+				break;
+			}
+		}
+		reader.close();
+		
+		return names;
+	}
+	
+	/**
+	 * @return	true if the (decompressed) file starts like a BCF file
+	 */
+	private static boolean isBCF(String file, int compression) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		if(compression!=PLAIN)
+			in = new GZIPInputStream(in);
+		
+		byte[] header = new byte[4];
+		int length = 0;
+		int read;
+		try
+		{
+			while(length<header.length && (read=in.read(header, length, header.length-length))!=-1)
+				length += read;
+		}
+		catch(IOException e)
+		{
+			//not readable as gzip, left to the parser to report
+		}
+		in.close();
+		
+		return BCFReader.isBCF(header, length);
+	}
+	
+	/**
+	 * Opens the records of the part.
+	 * 
+	 * @param vcfFile	the VCF (or BCF) file
+	 * @param numSamples	the number of sample columns that are read
+	 * @param inflatePool	the threads BGZF blocks are inflated on (or null)
+	 * @param inflateThreads	the number of threads of the pool
+	 * @return	a reader of the records
+	 * @throws IOException
+	 */
+	public VCFRecordReader openRecords(String vcfFile, int numSamples, ExecutorService inflatePool, int inflateThreads) throws IOException
+	{
+		if(bcf)
+			return new BCFReader(openStream(vcfFile, inflatePool, inflateThreads));
+		return new TextVCFRecordReader(open(vcfFile, inflatePool, inflateThreads), this, numSamples);
+	}
+	
+	/**
+	 * Opens the (decompressed) lines of the file starting at the part.
+	 * The reader does not stop at the end of the part. Uncompressed files
+	 * are read through memory mapping.
+	 * 
+	 * @param vcfFile	the VCF file
+	 * @param inflatePool	the threads BGZF blocks are inflated on (or null)
+	 * @param inflateThreads	the number of threads of the pool
+	 * @return	a reader of the lines
+	 * @throws IOException
+	 */
+	public VCFLineReader open(String vcfFile, ExecutorService inflatePool, int inflateThreads) throws IOException
+	{
+		if(compression==PLAIN)
+			return new MappedLineReader(vcfFile, offset, length);
+		
+		return new StreamLineReader(openStream(vcfFile, inflatePool, inflateThreads));
+	}
+	
+	/**
+	 * Opens the decompressed data of the file starting at the part.
+	 * 
+	 * @param vcfFile	the VCF (or BCF) file
+	 * @param inflatePool	the threads BGZF blocks are inflated on (or null)
+	 * @param inflateThreads	the number of threads of the pool
+	 * @return	the decompressed data
+	 * @throws IOException
+	 */
+	public InputStream openStream(String vcfFile, ExecutorService inflatePool, int inflateThreads) throws IOException
+	{
+		FileInputStream file = new FileInputStream(vcfFile);
+		file.getChannel().position(offset);
+		
+		if(compression==BGZF)
+			return new BGZFInputStream(new BufferedInputStream(file, 1<<16), inflatePool, BLOCKS_AHEAD_PER_THREAD*Math.max(1, inflateThreads));
+		if(compression==GZIP)
+			return new GZIPInputStream(file, 1<<16);
+		return new BufferedInputStream(file, 1<<16);
+	}
+}
@@ -0,0 +1,44 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the lines of a VCF file as byte slices.
+ * 
+ * VCF files are ASCII, so the lines are neither decoded into chars nor
+ * copied into Strings. The slice of the current line is only valid until
+ * the next call of {@link #next()}.
+ *
+ */
+public interface VCFLineReader
+{
+	/**
+	 * Moves to the next line.
+	 * 
+	 * @return	false if there are no more lines
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException;
+	
+	/**
+	 * @return	the buffer holding the current line
+	 */
+	public ByteBuffer buffer();
+	
+	/**
+	 * @return	the index of the first byte of the current line in the buffer
+	 */
+	public int start();
+	
+	/**
+	 * @return	the index after the last byte of the current line in the 
+	 * 			buffer (without line break)
+	 */
+	public int end();
+	
+	/**
+	 * @return	the offset in the input after the line break of the current line
+	 */
+	public long nextLineOffset();
+	
+	public void close() throws IOException;
+}
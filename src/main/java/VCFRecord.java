@@ -0,0 +1,82 @@
+/**
+ * The values of one record of a VCF (or BCF) file that are needed to
+ * classify the calls of its samples. Samples are given by the index of
+ * their column (0 for the first sample).
+ *
+ * The entries of the sample columns are found by their FORMAT key (not by
+ * their position), so the order of the entries does not matter. The
+ * positions of the keys are resolved once per distinct FORMAT column.
+ *
+ */
+public interface VCFRecord
+{
+	public static final int GT_NO_CALL = 0;
+	public static final int GT_HOM_REF = 1;
+	public static final int GT_HET = 2;
+	public static final int GT_HOM_VAR = 3;
+	public static final int GT_OTHER = 4;
+	
+	/** the FORMAT keys that are resolved, indexed by the FORMAT_ constants */
+	public static final String[] FORMAT_KEYS = {"GT", "AD", "DP", "GQ", "MIN_DP"};
+	
+	public static final int FORMAT_GT = 0;
+	public static final int FORMAT_AD = 1;
+	public static final int FORMAT_DP = 2;
+	public static final int FORMAT_GQ = 3;
+	public static final int FORMAT_MIN_DP = 4;
+	
+	/**
+	 * @return	the 1-based position (POS)
+	 */
+	public int getPos();
+	
+	/**
+	 * @return	the last 1-based position covered by the record (END of gVCF
+	 * 			reference blocks, otherwise POS)
+	 */
+	public int getEnd();
+	
+	/**
+	 * @return	true if the record is a gVCF reference block (the only
+	 * 			alternative allele is &lt;NON_REF&gt; or &lt;*&gt;)
+	 */
+	public boolean isReferenceBlock();
+	
+	/**
+	 * @param sample	the index of the sample
+	 * @param key	the FORMAT key of the entry (one of the FORMAT_ constants)
+	 * @param missing	the value returned if the entry is missing or '.'
+	 * @return	the entry as number
+	 */
+	public int getSampleInt(int sample, int key, int missing);
+	
+	/**
+	 * @return	the quality (QUAL)
+	 */
+	public double getQual();
+	
+	/**
+	 * @return	the first base of the alternative allele (ALT)
+	 */
+	public char getAlt();
+	
+	/**
+	 * @param sample	the index of the sample
+	 * @return	the genotype (GT) of the sample as one of the GT_ constants
+	 */
+	public int getGenotype(int sample);
+	
+	/**
+	 * @param sample	the index of the sample
+	 * @return	the depth of a reference call: the depth of the reference
+	 * 			allele (AD) or, if there is none, the read depth (DP)
+	 */
+	public int getDepth(int sample);
+	
+	/**
+	 * @param sample	the index of the sample
+	 * @param allele	index of the allele (0: reference, 1: first alternative)
+	 * @return	the depth of the allele (AD)
+	 */
+	public int getAlleleDepth(int sample, int allele);
+}
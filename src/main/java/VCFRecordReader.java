@@ -0,0 +1,26 @@
+import java.io.IOException;
+
+/**
+ * Reads the records of (a part of) a VCF or BCF file.
+ * 
+ * The record is reused, its values are only valid until the next call of
+ * {@link #next()}.
+ *
+ */
+public interface VCFRecordReader
+{
+	/**
+	 * Moves to the next record.
+	 * 
+	 * @return	false if there are no more records
+	 * @throws IOException
+	 */
+	public boolean next() throws IOException;
+	
+	/**
+	 * @return	the current record
+	 */
+	public VCFRecord record();
+	
+	public void close() throws IOException;
+}
@@ -0,0 +1,833 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a VCF file with one or more sample columns and puts the base
+ * calls of the samples into the genotype matrices.
+ *
+ * The file is split into parts (see {@link VCFChunk}) that are parsed at
+ * the same time. The calls of each part and sample are collected in a log
+ * that is applied to the matrices strictly in file order, so the matrices
+ * are written like by a single reader. Missing positions between two parts
+ * are filled in when the second part is applied. A part whose predecessors
+ * are all applied applies its log whenever it is full, so only parts that
+ * have to wait hold their calls in memory.
+ *
+ * If there are fewer parts than threads (e.g. a single gzip compressed
+ * multi-sample file), the sample columns are split into groups that are
+ * parsed at the same time, each reading the part on its own.
+ *
+ * Only the columns of the samples are written in the matrices and the
+ * position sets can be shared between threads, so several files can be
+ * parsed at the same time.
+ *
+ */
+public class VCFSampleParser
+{
+	private static final char nChar='N';
+	private static final char rChar='R';
+	
+	/** number of logged calls after which a part tries to apply its log */
+	private static final int FLUSH_SIZE = 1<<16;
+	
+	private final String vcfFile;
+	private final int numSamples;
+	
+	private final double minQual;
+	private final int minCov;
+	private final double minHomSNPallelFreq;
+	private final double minHetSNPallelFreq;
+	private final ExcludedPositions excludedPositions;
+	
+	private final GenotypeMatrix snpColumns;
+	private final GenotypeMatrix uncertainSnpColumns;
+	private final AlleleFrequencies snpFrequencies;
+	
+	private final PositionSet snpPositions;
+	private final PositionSet missingDataPos;
+	
+	private final ExecutorService inflatePool;
+	private final int inflateThreads;
+	
+	private final Column[] columns;
+	
+	private VCFChunk[] chunks;
+	
+	private boolean quiet = false;
+	
+	//only when parsing window by window
+	private VCFRecordReader stream;
+	private Part[] streamParts;
+	
+	/**
+	 * @param vcfFile	the VCF file
+	 * @param sampleNames	the names of the samples (one per sample column)
+	 * @param firstIndex	the index of the first sample in the matrices (the others follow)
+	 * @param outgroups	true for samples whose SNPs should not be added to the SNP positions
+	 * @param minQual	minimal genotyping quality
+	 * @param minCov	minimal coverage for base call
+	 * @param minHomSNPallelFreq	minimal allele frequency for homozygous call
+	 * @param minHetSNPallelFreq	minimal allele frequency for heterozygous call
+	 * @param excludedPositions	positions whose variant calls are counted as filtered
+	 * @param snpColumns	the base calls
+	 * @param uncertainSnpColumns	the base calls including uncertain calls
+	 * @param snpFrequencies	the allele frequencies of variant calls (or null)
+	 * @param snpPositions	the positions with variant calls in any (non-outgroup) sample
+	 * @param missingDataPos	the positions without a base call in any sample
+	 * @param inflatePool	the threads blocks of BGZF compressed files are inflated on (or null)
+	 * @param inflateThreads	the number of threads of inflatePool
+	 */
+	public VCFSampleParser(String vcfFile, List<String> sampleNames, int firstIndex, boolean[] outgroups, double minQual, int minCov, double minHomSNPallelFreq, double minHetSNPallelFreq, ExcludedPositions excludedPositions, GenotypeMatrix snpColumns, GenotypeMatrix uncertainSnpColumns, AlleleFrequencies snpFrequencies, PositionSet snpPositions, PositionSet missingDataPos, ExecutorService inflatePool, int inflateThreads)
+	{
+		this.vcfFile = vcfFile;
+		this.numSamples = sampleNames.size();
+		this.minQual = minQual;
+		this.minCov = minCov;
+		this.minHomSNPallelFreq = minHomSNPallelFreq;
+		this.minHetSNPallelFreq = minHetSNPallelFreq;
+		this.excludedPositions = excludedPositions;
+		this.snpColumns = snpColumns;
+		this.uncertainSnpColumns = uncertainSnpColumns;
+		this.snpFrequencies = snpFrequencies;
+		this.snpPositions = snpPositions;
+		this.missingDataPos = missingDataPos;
+		this.inflatePool = inflatePool;
+		this.inflateThreads = inflateThreads;
+		
+		this.columns = new Column[numSamples];
+		for(int sample=0; sample<numSamples; sample++)
+			columns[sample] = new Column(sample, firstIndex+sample, sampleNames.get(sample), outgroups[sample]);
+	}
+	
+	/**
+	 * Parses without printing the progress (the samples being processed
+	 * and the number of positions), e.g. when the file is parsed twice.
+	 * 
+	 * @param quiet	true to print no progress
+	 */
+	public void setQuiet(boolean quiet)
+	{
+		this.quiet = quiet;
+	}
+	
+	/**
+	 * Splits the VCF file into parts and submits tasks for the parts.
+	 * The file is parsed completely when all returned tasks are done.
+	 *
+	 * @param pool	the threads the parts are parsed on
+	 * @param numThreads	the number of threads of the pool
+	 * @param chunkSize	the size of the parts in bytes
+	 * @return	the tasks in file order
+	 * @throws Exception
+	 */
+	public List<Future<?>> submit(ExecutorService pool, int numThreads, long chunkSize) throws Exception
+	{
+		chunks = VCFChunk.split(vcfFile, chunkSize).toArray(new VCFChunk[0]);
+		List<Future<?>> tasks = new ArrayList<Future<?>>();
+		
+		for(Column column : columns)
+			column.init(chunks.length);
+		
+		//split the samples into groups if there are not enough parts for the threads
+		int numGroups = Math.max(1, Math.min(numSamples, (numThreads+chunks.length-1)/chunks.length));
+		int groupSize = (numSamples+numGroups-1)/numGroups;
+		
+		for(int i=0; i<chunks.length; i++)
+		{
+			for(int from=0; from<numSamples; from+=groupSize)
+			{
+				final int index = i;
+				final int first = from;
+				final int last = Math.min(from+groupSize, numSamples);
+				tasks.add(pool.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws Exception
+					{
+						parse(index, first, last);
+						return null;
+					}
+				}));
+			}
+		}
+		
+		return tasks;
+	}
+	
+	/**
+	 * @param sample	the index of the sample in the file
+	 * @return	the statistics of the sample (complete when all tasks are done)
+	 */
+	public SampleStatistics getStatistics(int sample)
+	{
+		return columns[sample].getStatistics();
+	}
+	
+	/**
+	 * Opens the file for parsing it in file order window by window (see
+	 * {@link #advance(int)}) instead of in parts on a pool.
+	 *
+	 * @throws Exception
+	 */
+	public void open() throws Exception
+	{
+		chunks = new VCFChunk[]{VCFChunk.whole(vcfFile)};
+		
+		for(Column column : columns)
+			column.init(chunks.length);
+		
+		printProcessing(0, numSamples);
+		
+		stream = chunks[0].openRecords(vcfFile, numSamples, inflatePool, inflateThreads);
+		streamParts = getParts(0, 0, numSamples);
+		
+		//the logs are applied window by window
+		for(Part part : streamParts)
+			part.flushSize = Integer.MAX_VALUE;
+	}
+	
+	/**
+	 * Parses the opened file until the calls of all positions before the
+	 * end are known and applies these calls to the matrices. Calls after
+	 * the end are kept until the next window.
+	 *
+	 * @param end	0-based position (exclusive)
+	 * @throws Exception
+	 */
+	public void advance(int end) throws Exception
+	{
+		while(stream!=null && streamParts[0].lastPos1based<end)
+		{
+			if(stream.next())
+			{
+				parseRecord(stream.record(), 0, 0, streamParts);
+			}
+			else
+			{
+				stream.close();
+				stream = null;
+			}
+		}
+		
+		for(Column column : columns)
+			column.commit(0, end);
+	}
+	
+	/**
+	 * Finishes parsing the opened file after the last window.
+	 *
+	 * @throws Exception
+	 */
+	public void close() throws Exception
+	{
+		if(stream!=null)
+		{
+			if(stream.next())
+				throw new Error("ERROR: Position behind the end of the reference genome in the vcf file:\n"+stream.record());
+			stream.close();
+			stream = null;
+		}
+		
+		for(Column column : columns)
+			column.finish(0);
+	}
+	
+	/**
+	 * Parses a part of the file for the samples from first to last (exclusive).
+	 */
+	private void parse(int index, int first, int last) throws Exception
+	{
+		if(index==0)
+			printProcessing(first, last);
+		
+		Part[] parts = getParts(index, first, last);
+		
+		VCFRecordReader reader = chunks[index].openRecords(vcfFile, last, inflatePool, inflateThreads);
+		while(reader.next())
+			parseRecord(reader.record(), index, first, parts);
+		reader.close();
+		
+		for(int sample=first; sample<last; sample++)
+			columns[sample].finish(index);
+	}
+	
+	private void printProcessing(int first, int last)
+	{
+		if(quiet)
+			return;
+		
+		for(int sample=first; sample<last; sample++)
+		{
+			System.out.println("Now processing "+(columns[sample].vcfIndex+1)+"/"+snpColumns.numSamples()+": "+columns[sample].name);
+			if(columns[sample].outgroup)
+				System.out.println("This is an outgroup! Outgroup-specific SNPs will not be considered.");
+		}
+	}
+	
+	private Part[] getParts(int index, int first, int last)
+	{
+		Part[] parts = new Part[last-first];
+		for(int sample=first; sample<last; sample++)
+			parts[sample-first] = columns[sample].getPart(index);
+		return parts;
+	}
+	
+	/**
+	 * Classifies the calls of a record for the samples of a group and
+	 * applies the logs that have grown large.
+	 */
+	private void parseRecord(VCFRecord record, int index, int first, Part[] parts)
+	{
+		Column column;
+		Part part;
+		for(int i=0; i<parts.length; i++)
+		{
+			column = columns[first+i];
+			part = parts[i];
+			
+			parseRecord(record, column, part);
+			
+			if(part.log.size()>=part.flushSize && !column.tryCommit(index))
+				part.flushSize += FLUSH_SIZE;
+		}
+	}
+	
+	private void parseRecord(VCFRecord record, Column column, Part part)
+	{
+		SampleStatistics stats = part.stats;
+		CallLog log = part.log;
+		
+		double qual;
+		int cov;
+		int refCov;
+		double SNPallelFreq;
+		int genotype;
+		char alt;
+		
+		int currPos1based = record.getPos();
+		
+		if(currPos1based<1)
+			throw new Error("ERROR: Invalid position in the vcf file:\n"+record);
+		
+		//insert Ns at not handled sites, which are left out by GATK
+		//(before the first position of a later part this is done when the part is applied)
+		if(part.firstPos1based==0)
+		{
+			part.firstPos1based = currPos1based;
+			if(part.first)
+			{
+				fillGap(0, currPos1based, stats, log);
+				part.gapFilled = true;
+			}
+		}
+		else
+			fillGap(part.lastPos1based, currPos1based, stats, log);
+		
+		genotype = record.getGenotype(column.sample);
+		
+		//gVCF reference block
+		if(record.isReferenceBlock())
+		{
+			part.lastPos1based = record.getEnd();
+			parseReferenceBlock(record, column.sample, genotype, currPos1based, part.lastPos1based, stats, log);
+			return;
+		}
+		
+		//count
+		stats.allPos++;
+		
+		part.lastPos1based = currPos1based;
+		
+		//No call
+		if(genotype==VCFRecord.GT_NO_CALL)
+		{
+			stats.noCallPos++;
+			
+			log.add(currPos1based-1, nChar, nChar);
+			missingDataPos.add(currPos1based-1);
+			
+		}
+		//Reference Call
+		else if(genotype==VCFRecord.GT_HOM_REF)
+		{
+			qual = record.getQual();
+			cov=record.getDepth(column.sample);
+			stats.covCount+=cov;
+			
+			if(qual>=minQual && cov >= minCov)
+			{
+				stats.refCallPos++;
+				
+				// do nothing since reference is called
+			}
+			else
+			{
+				stats.discardedRefCall++;
+				
+				log.add(currPos1based-1, nChar, rChar);
+				missingDataPos.add(currPos1based-1);
+				
+			}
+		}
+		//variant call
+		else if(genotype==VCFRecord.GT_HET || genotype==VCFRecord.GT_HOM_VAR)
+		{
+			qual = record.getQual();
+			cov=record.getAlleleDepth(column.sample, 1);
+			refCov=record.getAlleleDepth(column.sample, 0);
+			alt=record.getAlt();
+			SNPallelFreq=Math.min((double)cov/(cov+refCov-1) , 1); // -1 because once doesn't count
+			
+			if(snpFrequencies!=null)
+				log.setFrequency(currPos1based-1, SNPallelFreq);
+			
+			stats.covCount+=cov+refCov;
+			
+			if(qual>=minQual && cov >= minCov && SNPallelFreq >= minHomSNPallelFreq)
+			{
+				if(excludedPositions.isInExcludedRegion(currPos1based))
+					stats.filteredVarCall++;
+				else
+					stats.varCallPos++;
+				
+				log.add(currPos1based-1, alt, alt);
+				
+				if(!column.outgroup)
+					snpPositions.add(currPos1based);
+				
+			}
+			else if(qual>=minQual && cov >= minCov && SNPallelFreq >= minHetSNPallelFreq)
+			{
+				if(excludedPositions.isInExcludedRegion(currPos1based))
+					stats.filteredVarCall++;
+				else
+				{
+					stats.varCallPos++;
+					stats.hetVarCallPos++;
+				}
+				
+				log.addAmbiguous(currPos1based-1, alt);
+				
+				if(!column.outgroup)
+					snpPositions.add(currPos1based);
+				
+			}
+			else
+			{
+				SNPallelFreq=(double)refCov/(refCov+cov-1); // -1 because once doesn't count
+				cov=refCov;
+				
+				if(qual>=minQual && cov >= minCov)
+				{
+					if(SNPallelFreq>=minHomSNPallelFreq)
+					{
+						stats.refCallPos++;
+					}
+					else
+					{
+						//System.err.println("DEBUG: "+column.name+" pos: "+currPos1based);
+						stats.discardedVarCall++;
+						
+						log.add(currPos1based-1, nChar, nChar);
+						
+						missingDataPos.add(currPos1based-1);
+					}
+					// do nothing since reference is called
+				}
+				else
+				{
+					stats.discardedVarCall++;
+					
+					if(genotype==VCFRecord.GT_HOM_VAR)
+						log.add(currPos1based-1, nChar, Character.toLowerCase(alt));
+					else
+						log.add(currPos1based-1, nChar, nChar);
+					
+					missingDataPos.add(currPos1based-1);
+					
+				}
+			}
+			
+		}
+		//unhandled genotype
+		else
+		{
+			stats.unknownCall++;
+			//System.err.println("WARNING: The Genotype of this line cannot be handled:\n"+record+"\nInserting 'N'!");
+			
+			log.add(currPos1based-1, nChar, nChar);
+			missingDataPos.add(currPos1based-1);
+		}
+	}
+	
+	/**
+	 * Applies one call to all positions of a gVCF reference block. The
+	 * genotype quality (GQ) and the minimal coverage of the block (MIN_DP,
+	 * otherwise DP) are used as quality and coverage of a reference call.
+	 */
+	private void parseReferenceBlock(VCFRecord record, int sample, int genotype, int startPos1based, int endPos1based, SampleStatistics stats, CallLog log)
+	{
+		if(endPos1based<startPos1based)
+			throw new Error("ERROR: Reference block ends before it starts in the vcf file:\n"+record);
+		
+		int length = endPos1based-startPos1based+1;
+		
+		stats.allPos += length;
+		
+		//No call
+		if(genotype==VCFRecord.GT_NO_CALL)
+		{
+			stats.noCallPos += length;
+			
+			log.addRange(startPos1based-1, endPos1based-1, nChar, nChar);
+			missingDataPos.addRange(startPos1based-1, endPos1based-1);
+		}
+		//Reference Call
+		else if(genotype==VCFRecord.GT_HOM_REF)
+		{
+			int qual = record.getSampleInt(sample, VCFRecord.FORMAT_GQ, 0);
+			int cov = record.getSampleInt(sample, VCFRecord.FORMAT_MIN_DP, -1);
+			if(cov<0)
+				cov = record.getSampleInt(sample, VCFRecord.FORMAT_DP, 0);
+			
+			stats.covCount += (long)cov*length;
+			
+			if(qual>=minQual && cov >= minCov)
+			{
+				stats.refCallPos += length;
+			}
+			else
+			{
+				stats.discardedRefCall += length;
+				
+				log.addRange(startPos1based-1, endPos1based-1, nChar, rChar);
+				missingDataPos.addRange(startPos1based-1, endPos1based-1);
+			}
+		}
+		//unhandled genotype
+		else
+		{
+			stats.unknownCall += length;
+			
+			log.addRange(startPos1based-1, endPos1based-1, nChar, nChar);
+			missingDataPos.addRange(startPos1based-1, endPos1based-1);
+		}
+	}
+	
+	/**
+	 * Inserts Ns at the positions between two base calls.
+	 */
+	private void fillGap(int lastPos1based, int currPos1based, SampleStatistics stats, CallLog log)
+	{
+		if(lastPos1based>=currPos1based)
+			throw new Error("ERROR: Base calls in the vcf file are not sorted! (Note that multiple chromosomes are not supported.)");
+		
+		if(currPos1based-lastPos1based>1)
+		{
+			stats.allPos += currPos1based-lastPos1based-1;
+			stats.nonStandardRefChars += currPos1based-lastPos1based-1;
+			
+			log.addRange(lastPos1based, currPos1based-2, nChar, nChar);
+			missingDataPos.addRange(lastPos1based, currPos1based-2);
+		}
+	}
+	
+	/**
+	 * A sample column of the file with the parts parsed for it and the
+	 * state of applying them to the matrices.
+	 */
+	private class Column
+	{
+		/** index of the sample in the file */
+		final int sample;
+		
+		/** index of the sample in the matrices */
+		final int vcfIndex;
+		
+		final String name;
+		
+		final boolean outgroup;
+		
+		//guarded by this
+		private Part[] parts;
+		private int nextPart = 0;
+		private int lastPos1based = 0;
+		private final SampleStatistics stats = new SampleStatistics();
+		
+		Column(int sample, int vcfIndex, String name, boolean outgroup)
+		{
+			this.sample = sample;
+			this.vcfIndex = vcfIndex;
+			this.name = name;
+			this.outgroup = outgroup;
+		}
+		
+		synchronized void init(int numParts)
+		{
+			parts = new Part[numParts];
+		}
+		
+		/**
+		 * @return	the part, created when it is first used
+		 */
+		synchronized Part getPart(int index)
+		{
+			if(parts[index]==null)
+				parts[index] = new Part(index==0);
+			return parts[index];
+		}
+		
+		synchronized SampleStatistics getStatistics()
+		{
+			return stats;
+		}
+		
+		/**
+		 * Applies the log of a part if all previous parts are applied.
+		 *
+		 * @return	true if the log was applied
+		 */
+		synchronized boolean tryCommit(int index)
+		{
+			if(nextPart!=index)
+				return false;
+			
+			commit(parts[index], Integer.MAX_VALUE);
+			return true;
+		}
+		
+		/**
+		 * Marks a part as parsed and applies all parsed parts whose
+		 * predecessors are applied.
+		 */
+		synchronized void finish(int index)
+		{
+			parts[index].done = true;
+			
+			Part part;
+			int processed;
+			while(nextPart<parts.length && parts[nextPart]!=null && parts[nextPart].done)
+			{
+				part = parts[nextPart];
+				commit(part, Integer.MAX_VALUE);
+				
+				if(part.firstPos1based!=0)
+					lastPos1based = part.lastPos1based;
+				
+				processed = stats.allPos;
+				stats.add(part.stats);
+				if(!quiet && stats.allPos/500000>processed/500000)
+					System.out.println((stats.allPos/500000)*500000+" positions processed.");
+				
+				parts[nextPart] = null;
+				nextPart++;
+			}
+		}
+		
+		/**
+		 * Applies the logged calls of a part up to a position. All previous
+		 * parts must be applied.
+		 * 
+		 * @param index	the index of the part
+		 * @param limit	0-based position (exclusive), calls from there on stay in the log
+		 */
+		synchronized void commit(int index, int limit)
+		{
+			commit(parts[index], limit);
+		}
+		
+		private void commit(Part part, int limit)
+		{
+			if(!part.gapFilled && part.firstPos1based!=0)
+			{
+				CallLog gap = new CallLog();
+				fillGap(lastPos1based, part.firstPos1based, stats, gap);
+				apply(gap, Integer.MAX_VALUE);
+				part.gapFilled = true;
+			}
+			
+			apply(part.log, limit);
+		}
+		
+		/**
+		 * Applies the calls of a log before the limit and removes them from
+		 * the log. Ranges reaching over the limit are cut at the limit.
+		 */
+		private void apply(CallLog log, int limit)
+		{
+			int pos;
+			int kept = 0;
+			for(int i=0; i<log.size; i++)
+			{
+				pos = log.positions[i];
+				
+				if(pos>=limit)
+				{
+					log.move(i, kept++);
+					continue;
+				}
+				
+				if(!Double.isNaN(log.frequencies[i]))
+					snpFrequencies.set(pos, vcfIndex, log.frequencies[i]);
+				
+				if(log.types[i]==CallLog.AMBIGUOUS)
+				{
+					snpColumns.set(pos, vcfIndex, MultiVCFAnalyzer.getAmbiguousBase(snpColumns.get(pos, vcfIndex) , log.calls[i]));
+					uncertainSnpColumns.set(pos, vcfIndex, MultiVCFAnalyzer.getAmbiguousBase(snpColumns.get(pos, vcfIndex) , log.calls[i]));
+				}
+				else if(log.types[i]==CallLog.CALLS)
+				{
+					for(; pos<=log.ends[i] && pos<limit; pos++)
+					{
+						snpColumns.set(pos, vcfIndex, log.calls[i]);
+						uncertainSnpColumns.set(pos, vcfIndex, log.uncertainCalls[i]);
+					}
+					
+					if(pos<=log.ends[i])
+					{
+						log.positions[i] = pos;
+						log.move(i, kept++);
+					}
+				}
+			}
+			log.size = kept;
+		}
+	}
+	
+	/**
+	 * What was parsed from a part of the VCF file for one sample.
+	 */
+	private static class Part
+	{
+		final CallLog log = new CallLog();
+		
+		final SampleStatistics stats = new SampleStatistics();
+		
+		/** first and last position of the part (0 if there is none) */
+		int firstPos1based = 0;
+		int lastPos1based = 0;
+		
+		int flushSize = FLUSH_SIZE;
+		
+		boolean gapFilled = false;
+		
+		boolean done = false;
+		
+		/** true for the first part of the file */
+		final boolean first;
+		
+		Part(boolean first)
+		{
+			this.first = first;
+		}
+	}
+	
+	/**
+	 * The calls of a part of a VCF file in file order, at most one entry
+	 * per position. Entries with calls can cover a range of positions.
+	 */
+	private static class CallLog
+	{
+		static final byte NONE = 0;
+		static final byte CALLS = 1;
+		static final byte AMBIGUOUS = 2;
+		
+		//the arrays are allocated with the first entry, many logs stay empty
+		int size = 0;
+		int[] positions = new int[0];
+		int[] ends = new int[0];
+		byte[] types = new byte[0];
+		char[] calls = new char[0];
+		char[] uncertainCalls = new char[0];
+		double[] frequencies = new double[0];
+		
+		int size()
+		{
+			return size;
+		}
+		
+		/**
+		 * Sets the base call and the uncertain base call of a position.
+		 */
+		void add(int pos, char call, char uncertainCall)
+		{
+			addRange(pos, pos, call, uncertainCall);
+		}
+		
+		/**
+		 * Sets the base call and the uncertain base call of all positions
+		 * from start to end (both inclusive).
+		 */
+		void addRange(int start, int end, char call, char uncertainCall)
+		{
+			int i = entry(start);
+			types[i] = CALLS;
+			ends[i] = end;
+			calls[i] = call;
+			uncertainCalls[i] = uncertainCall;
+		}
+		
+		/**
+		 * Sets the calls of a position to the ambiguity code of the
+		 * current call and the alternative base.
+		 */
+		void addAmbiguous(int pos, char alt)
+		{
+			int i = entry(pos);
+			types[i] = AMBIGUOUS;
+			calls[i] = alt;
+		}
+		
+		void setFrequency(int pos, double freq)
+		{
+			int i = entry(pos);
+			frequencies[i] = freq;
+		}
+		
+		/**
+		 * Copies an entry to an earlier index.
+		 */
+		void move(int from, int to)
+		{
+			if(from==to)
+				return;
+			positions[to] = positions[from];
+			ends[to] = ends[from];
+			types[to] = types[from];
+			calls[to] = calls[from];
+			uncertainCalls[to] = uncertainCalls[from];
+			frequencies[to] = frequencies[from];
+		}
+		
+		/**
+		 * @return	the index of the entry of the position, a new entry if
+		 * 			the position is not the last one in the log
+		 */
+		private int entry(int pos)
+		{
+			if(size>0 && positions[size-1]==pos)
+				return size-1;
+			
+			if(size==positions.length)
+			{
+				int capacity = Math.max(256, size*2);
+				positions = Arrays.copyOf(positions, capacity);
+				ends = Arrays.copyOf(ends, capacity);
+				types = Arrays.copyOf(types, capacity);
+				calls = Arrays.copyOf(calls, capacity);
+				uncertainCalls = Arrays.copyOf(uncertainCalls, capacity);
+				frequencies = Arrays.copyOf(frequencies, capacity);
+			}
+			
+			positions[size] = pos;
+			ends[size] = pos;
+			types[size] = NONE;
+			frequencies[size] = Double.NaN;
+			return size++;
+		}
+	}
+}
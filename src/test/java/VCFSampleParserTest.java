@@ -0,0 +1,323 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Parses the same VCF file in parts of the smallest size and as a single
+ * part and compares the results. The files have gaps between the records
+ * and records crossing the edges of the parts.
+ *
+ */
+public class VCFSampleParserTest
+{
+	private static final int GENOME_LENGTH = 50000;
+	
+	private static final List<String> SAMPLE_NAMES = Arrays.asList("S1", "S2");
+	
+	private static final boolean[] OUTGROUPS = {false, true};
+	
+	private static final double MIN_QUAL = 30;
+	private static final int MIN_COV = 5;
+	private static final double MIN_HOM_SNP_ALLEL_FREQ = 0.9;
+	private static final double MIN_HET_SNP_ALLEL_FREQ = 0.2;
+	
+	/** uncompressed size of a written BGZF block */
+	private static final int BGZF_BLOCK_SIZE = 1<<14;
+	
+	private static final char[] BASES = {'A', 'C', 'G', 'T'};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void plainPartsMatchSinglePart() throws Exception
+	{
+		ReferenceGenome reference = createReference(1);
+		File vcf = folder.newFile("plain.vcf");
+		write(vcf, createVCF(reference, false, 2));
+		
+		assertRecordCrossesEdge(vcf);
+		assertSameResults(reference, vcf);
+	}
+	
+	@Test
+	public void bgzfPartsMatchSinglePart() throws Exception
+	{
+		ReferenceGenome reference = createReference(3);
+		File vcf = folder.newFile("bgzf.vcf.gz");
+		writeBGZF(vcf, createVCF(reference, false, 4));
+		
+		assertEquals(VCFChunk.BGZF, VCFChunk.detectCompression(vcf.getPath()));
+		assertSameResults(reference, vcf);
+	}
+	
+	@Test
+	public void gvcfPartsMatchSinglePart() throws Exception
+	{
+		ReferenceGenome reference = createReference(5);
+		File vcf = folder.newFile("reference_blocks.g.vcf");
+		write(vcf, createVCF(reference, true, 6));
+		
+		assertRecordCrossesEdge(vcf);
+		assertSameResults(reference, vcf);
+	}
+	
+	private void assertSameResults(ReferenceGenome reference, File vcf) throws Exception
+	{
+		assertTrue(VCFChunk.split(vcf.getPath(), VCFChunk.MIN_SIZE).size()>1);
+		
+		Result parts = parse(reference, vcf, VCFChunk.MIN_SIZE);
+		Result single = parse(reference, vcf, Long.MAX_VALUE);
+		
+		//the file has calls of all kinds
+		assertTrue(single.snpPositions.size()>0);
+		assertTrue(single.missingDataPos.size()>0);
+		
+		for(int sample=0; sample<SAMPLE_NAMES.size(); sample++)
+		{
+			for(int pos=0; pos<reference.length(); pos++)
+			{
+				assertEquals("call of sample "+sample+" at "+pos, single.calls.get(pos, sample), parts.calls.get(pos, sample));
+				assertEquals("uncertain call of sample "+sample+" at "+pos, single.uncertainCalls.get(pos, sample), parts.uncertainCalls.get(pos, sample));
+				assertEquals("frequency of sample "+sample+" at "+pos, single.frequencies.get(pos, sample), parts.frequencies.get(pos, sample), 0);
+			}
+			assertEquals(single.statistics[sample], parts.statistics[sample]);
+		}
+		
+		assertArrayEquals(single.snpPositions.toArray(), parts.snpPositions.toArray());
+		assertArrayEquals(single.missingDataPos.toArray(), parts.missingDataPos.toArray());
+	}
+	
+	/**
+	 * Asserts that a part of a plain file does not start at the start of a line.
+	 */
+	private static void assertRecordCrossesEdge(File vcf) throws IOException
+	{
+		RandomAccessFile file = new RandomAccessFile(vcf, "r");
+		try
+		{
+			for(VCFChunk chunk : VCFChunk.split(vcf.getPath(), VCFChunk.MIN_SIZE))
+			{
+				if(chunk.first)
+					continue;
+				
+				file.seek(chunk.offset-1);
+				if(file.read()!='\n')
+					return;
+			}
+		}
+		finally
+		{
+			file.close();
+		}
+		throw new AssertionError("No record crosses the edge of a part");
+	}
+	
+	private static Result parse(ReferenceGenome reference, File vcf, long chunkSize) throws Exception
+	{
+		Result result = new Result(reference);
+		
+		VCFSampleParser parser = new VCFSampleParser(vcf.getPath(), SAMPLE_NAMES, 0, OUTGROUPS, MIN_QUAL, MIN_COV, MIN_HOM_SNP_ALLEL_FREQ, MIN_HET_SNP_ALLEL_FREQ, new ExcludedPositions("NA", reference.length()), result.calls, result.uncertainCalls, result.frequencies, result.snpPositions, result.missingDataPos, null, 0);
+		parser.setQuiet(true);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try
+		{
+			for(Future<?> task : parser.submit(pool, 4, chunkSize))
+				task.get();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		
+		for(int sample=0; sample<SAMPLE_NAMES.size(); sample++)
+			result.statistics[sample] = parser.getStatistics(sample).toTableLine(SAMPLE_NAMES.get(sample));
+		
+		return result;
+	}
+	
+	private static ReferenceGenome createReference(long seed)
+	{
+		Random random = new Random(seed);
+		byte[] sequence = new byte[GENOME_LENGTH];
+		for(int i=0; i<sequence.length; i++)
+			sequence[i] = (byte)BASES[random.nextInt(BASES.length)];
+		
+		return new ReferenceGenome("chrTest", new String[]{"chrTest"}, new int[]{GENOME_LENGTH}, sequence);
+	}
+	
+	/**
+	 * Creates random records (and gVCF reference blocks) with gaps at the
+	 * start, in between and at the end of the genome.
+	 */
+	private static String createVCF(ReferenceGenome reference, boolean referenceBlocks, long seed)
+	{
+		Random random = new Random(seed);
+		StringBuilder vcf = new StringBuilder();
+		vcf.append("##fileformat=VCFv4.2\n");
+		vcf.append("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT");
+		for(String name : SAMPLE_NAMES)
+			vcf.append('\t').append(name);
+		vcf.append('\n');
+		
+		int last = reference.length()-1-random.nextInt(20);
+		char ref;
+		char alt;
+		int end;
+		int depth;
+		int refDepth;
+		int altDepth;
+		for(int pos=1+random.nextInt(20); pos<=last; pos++)
+		{
+			ref = reference.charAt(pos-1);
+			
+			if(referenceBlocks && random.nextInt(3)>0)
+			{
+				end = Math.min(pos+random.nextInt(20), last);
+				vcf.append("chrTest\t"+pos+"\t.\t"+ref+"\t<NON_REF>\t.\t.\tEND="+end+"\tGT:DP:GQ:MIN_DP:PL");
+				for(int sample=0; sample<SAMPLE_NAMES.size(); sample++)
+				{
+					depth = random.nextInt(30);
+					vcf.append('\t').append(random.nextInt(10)==0 ? "./." : "0/0").append(":"+(depth+random.nextInt(5))+":"+random.nextInt(99)+":"+depth+":0,0,0");
+				}
+				vcf.append('\n');
+				pos = end;
+			}
+			else
+			{
+				do
+					alt = BASES[random.nextInt(BASES.length)];
+				while(alt==ref);
+				
+				vcf.append("chrTest\t"+pos+"\t.\t"+ref+"\t"+alt+"\t"+(10+random.nextInt(90))+".5\t.\tDP=20\tGT:AD:DP");
+				for(int sample=0; sample<SAMPLE_NAMES.size(); sample++)
+				{
+					refDepth = random.nextInt(4);
+					altDepth = 1+random.nextInt(30);
+					if(refDepth+altDepth<2)
+						altDepth++;
+					
+					switch(random.nextInt(8))
+					{
+						case 0:
+						case 1:
+						case 2:
+							depth = random.nextInt(30);
+							vcf.append("\t0/0:"+depth+":"+depth);
+							break;
+						case 3:
+						case 4:
+							vcf.append("\t1/1:"+refDepth+","+altDepth+":"+(refDepth+altDepth));
+							break;
+						case 5:
+							vcf.append("\t0/1:"+altDepth+","+refDepth+":"+(refDepth+altDepth));
+							break;
+						case 6:
+							vcf.append("\t./.:0:0");
+							break;
+						default:
+							vcf.append("\t1/2:1,"+altDepth+","+refDepth+":"+(1+refDepth+altDepth));
+					}
+				}
+				vcf.append('\n');
+			}
+			
+			if(random.nextInt(5)==0)
+				pos += 1+random.nextInt(50);
+		}
+		
+		return vcf.toString();
+	}
+	
+	private static void write(File file, String content) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		out.write(content.getBytes(StandardCharsets.US_ASCII));
+		out.close();
+	}
+	
+	/**
+	 * Writes the content as BGZF blocks of a fixed size (so records cross
+	 * the blocks) followed by the empty end-of-file block.
+	 */
+	private static void writeBGZF(File file, String content) throws IOException
+	{
+		byte[] data = content.getBytes(StandardCharsets.US_ASCII);
+		
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+		for(int offset=0; offset<data.length; offset+=BGZF_BLOCK_SIZE)
+			writeBGZFBlock(out, data, offset, Math.min(BGZF_BLOCK_SIZE, data.length-offset));
+		writeBGZFBlock(out, data, 0, 0);
+		out.close();
+	}
+	
+	private static void writeBGZFBlock(OutputStream out, byte[] data, int offset, int length) throws IOException
+	{
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data, offset, length);
+		deflater.finish();
+		byte[] compressed = new byte[length+1024];
+		int size = deflater.deflate(compressed);
+		deflater.end();
+		
+		CRC32 crc = new CRC32();
+		crc.update(data, offset, length);
+		
+		ByteBuffer header = ByteBuffer.allocate(18).order(ByteOrder.LITTLE_ENDIAN);
+		header.put((byte)31).put((byte)139).put((byte)8).put((byte)4).putInt(0).put((byte)0).put((byte)255);
+		header.putShort((short)6).put((byte)'B').put((byte)'C').putShort((short)2).putShort((short)(18+size+8-1));
+		
+		ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+		trailer.putInt((int)crc.getValue()).putInt(length);
+		
+		out.write(header.array());
+		out.write(compressed, 0, size);
+		out.write(trailer.array());
+	}
+	
+	/**
+	 * The matrices and sets a file is parsed into.
+	 */
+	private static class Result
+	{
+		final GenotypeMatrix calls;
+		final GenotypeMatrix uncertainCalls;
+		final AlleleFrequencies frequencies;
+		final PositionSet snpPositions;
+		final PositionSet missingDataPos;
+		final String[] statistics;
+		
+		Result(ReferenceGenome reference)
+		{
+			calls = new PackedGenotypeMatrix(reference, SAMPLE_NAMES.size());
+			uncertainCalls = new PackedGenotypeMatrix(reference, SAMPLE_NAMES.size());
+			frequencies = new SparseAlleleFrequencies(SAMPLE_NAMES.size());
+			snpPositions = new PositionSet(reference.length()+1);
+			missingDataPos = new PositionSet(reference.length());
+			statistics = new String[SAMPLE_NAMES.size()];
+		}
+	}
+}